@@ -0,0 +1,134 @@
+package gov.nasa.gsfc.spdf.cdfj;
+import java.io.*;
+import java.lang.reflect.*;
+import java.nio.*;
+/**
+ * DecodeBench compares the conversion of integer values to double by
+ * the DecodeKernel table with the reflective conversion, through
+ * DataTypes.method, that it replaced, and measures getOneDArray to
+ * double for integer variables of a generated CDF.
+ * Not part of the build. From the project directory:
+ * <pre>
+ * mvn -q compile
+ * javac -cp target/classes -d target/bench src/bench/java/gov/nasa/gsfc/spdf/cdfj/*.java
+ * java -cp target/classes:target/bench gov.nasa.gsfc.spdf.cdfj.DecodeBench [values]
+ * </pre>
+ */
+public class DecodeBench {
+    static final int RUNS = 40;
+    static final int[] TYPES = {1, 2, 4, 11, 12, 14};
+    static final String[] NAMES = {"INT1", "INT2", "INT4", "UINT1", "UINT2",
+        "UINT4"};
+    static final CDFDataType[] CDF_TYPES = {CDFDataType.INT1,
+        CDFDataType.INT2, CDFDataType.INT4, CDFDataType.UINT1,
+        CDFDataType.UINT2, CDFDataType.UINT4};
+    static volatile double sink;
+
+    public static void main(String[] args) throws Throwable {
+        int n = (args.length > 0)?Integer.parseInt(args[0]):200000;
+        System.out.println("decode to double, Mvalues/s");
+        System.out.println("type     reflection    kernel");
+        for (int t = 0; t < TYPES.length; t++) {
+            int type = TYPES[t];
+            ByteBuffer src = ByteBuffer.allocateDirect(n*DataTypes.size[type]);
+            src.order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < src.capacity(); i++) src.put(i, (byte)(i*31));
+            double[] data = new double[n];
+            double reflective = rate(n, bestReflective(src, type, data));
+            double kernel = rate(n, bestKernel(src, type, data));
+            System.out.printf("%-8s %10.1f %9.1f%n", NAMES[t], reflective,
+                kernel);
+        }
+        File file = File.createTempFile("decode", ".cdf");
+        try {
+            write(file, n);
+            CDFReader reader = new CDFReader(file.getPath());
+            System.out.println("getOneDArray to double, Mvalues/s");
+            for (int t = 0; t < NAMES.length; t++) {
+                long best = Long.MAX_VALUE;
+                for (int r = 0; r < RUNS; r++) {
+                    long t0 = System.nanoTime();
+                    Object o = reader.getOneDArray(NAMES[t], "double", null,
+                        false, false);
+                    long time = System.nanoTime() - t0;
+                    sink = ((double[])o)[n - 1];
+                    if (time < best) best = time;
+                }
+                System.out.printf("%-8s %10.1f%n", NAMES[t], rate(n, best));
+            }
+            reader.close();
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * converts the values of src as DoubleVarContainer did before the
+     * kernels, returning the best time of RUNS in nanoseconds.
+     */
+    static long bestReflective(ByteBuffer src, int type, double[] data)
+        throws IllegalAccessException, InvocationTargetException {
+        Method method = DataTypes.method[type];
+        long longInt = DataTypes.longInt[type];
+        boolean unsigned =
+            (DataTypes.typeCategory[type] == DataTypes.UNSIGNED_INTEGER);
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < RUNS; r++) {
+            ByteBuffer bv = src.duplicate().order(src.order());
+            long t0 = System.nanoTime();
+            for (int e = 0; e < data.length; e++) {
+                Number num = (Number)method.invoke(bv, new Object[] {});
+                if (unsigned) {
+                    int x = num.intValue();
+                    data[e] = (x >= 0)?(double)x:(double)(longInt + x);
+                } else {
+                    data[e] = num.doubleValue();
+                }
+            }
+            long time = System.nanoTime() - t0;
+            sink = data[data.length - 1];
+            if (time < best) best = time;
+        }
+        return best;
+    }
+
+    static long bestKernel(ByteBuffer src, int type, double[] data) {
+        DecodeKernel kernel = DecodeKernel.get(type);
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < RUNS; r++) {
+            ByteBuffer bv = src.duplicate().order(src.order());
+            long t0 = System.nanoTime();
+            kernel.toDouble(bv, data, 0, data.length);
+            long time = System.nanoTime() - t0;
+            sink = data[data.length - 1];
+            if (time < best) best = time;
+        }
+        return best;
+    }
+
+    static double rate(int n, long nanos) {
+        return n/(nanos/1e3);
+    }
+
+    static void write(File file, int n) throws Throwable {
+        CDFWriter w = new CDFWriter(false);
+        for (int t = 0; t < NAMES.length; t++) {
+            w.defineVariable(NAMES[t], CDF_TYPES[t], new int[0]);
+        }
+        byte[] b = new byte[n];
+        short[] s = new short[n];
+        int[] i4 = new int[n];
+        for (int i = 0; i < n; i++) {
+            b[i] = (byte)i;
+            s[i] = (short)(i*7);
+            i4[i] = i*131;
+        }
+        w.addOneD("INT1", b);
+        w.addOneD("INT2", s);
+        w.addOneD("INT4", i4);
+        w.addOneD("UINT1", b, true);
+        w.addOneD("UINT2", s, true);
+        w.addOneD("UINT4", i4, true);
+        w.write(file.getPath());
+    }
+}
@@ -0,0 +1,110 @@
+package gov.nasa.gsfc.spdf.cdfj;
+import com.sun.net.httpserver.*;
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.util.*;
+import java.util.concurrent.*;
+/**
+ * RangeDownloadBench measures the throughput of ByteBufferURLReader
+ * against a local HTTP stub, for increasing numbers of connections.
+ * The stub answers HEAD and byte range requests, honours If-Range, and
+ * delays each response and each block of data it sends, to model a
+ * link of high latency and limited bandwidth per connection.
+ * Not part of the build. From the project directory:
+ * <pre>
+ * mvn -q compile
+ * javac -cp target/classes -d target/bench src/bench/java/gov/nasa/gsfc/spdf/cdfj/*.java
+ * java -cp target/classes:target/bench gov.nasa.gsfc.spdf.cdfj.RangeDownloadBench [MB] [latency ms] [ms per 64 KB]
+ * </pre>
+ */
+public class RangeDownloadBench {
+    static final int BLOCK = 64*1024;
+    static final String ETAG = "\"bench\"";
+
+    public static void main(String[] args) throws Exception {
+        int mb = (args.length > 0)?Integer.parseInt(args[0]):32;
+        final int latency = (args.length > 1)?Integer.parseInt(args[1]):50;
+        final int pace = (args.length > 2)?Integer.parseInt(args[2]):2;
+        final byte [] data = new byte[mb*1024*1024];
+        new Random(1).nextBytes(data);
+        HttpServer server =
+            HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 64);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange ex) throws IOException {
+                serve(ex, data, latency, pace);
+            }
+        });
+        server.start();
+        URL url = new URL("http://127.0.0.1:" +
+            server.getAddress().getPort() + "/bench.cdf");
+        try {
+            for (int connections = 1; connections <= 16; connections *= 2) {
+                long best = Long.MAX_VALUE;
+                for (int run = 0; run < 3; run++) {
+                    long t0 = System.nanoTime();
+                    ByteBufferURLReader reader = new ByteBufferURLReader(url);
+                    reader.setConnections(connections);
+                    ByteBuffer buf = reader.getBuffer();
+                    long t = System.nanoTime() - t0;
+                    if (buf.remaining() != data.length) {
+                        throw new IOException("Read " + buf.remaining() +
+                            " bytes, expected " + data.length);
+                    }
+                    if (t < best) best = t;
+                }
+                System.out.printf("connections %2d: %8.1f MB/s%n", connections,
+                    data.length/(best/1e9)/(1024*1024));
+            }
+        } finally {
+            server.stop(0);
+            System.exit(0);
+        }
+    }
+
+    static void serve(HttpExchange ex, byte [] data, int latency, int pace)
+        throws IOException {
+        try {
+            sleep(latency);
+            Headers headers = ex.getResponseHeaders();
+            headers.set("Accept-Ranges", "bytes");
+            headers.set("ETag", ETAG);
+            if (ex.getRequestMethod().equals("HEAD")) {
+                headers.set("Content-Length", "" + data.length);
+                ex.sendResponseHeaders(200, -1);
+                return;
+            }
+            int start = 0;
+            int end = data.length - 1;
+            int code = 200;
+            String range = ex.getRequestHeaders().getFirst("Range");
+            String ifRange = ex.getRequestHeaders().getFirst("If-Range");
+            if ((range != null) && ((ifRange == null) || ifRange.equals(ETAG))) {
+                String [] bounds = range.substring(6).split("-");
+                start = Integer.parseInt(bounds[0]);
+                end = Integer.parseInt(bounds[1]);
+                code = 206;
+                headers.set("Content-Range", "bytes " + start + "-" + end +
+                    "/" + data.length);
+            }
+            ex.sendResponseHeaders(code, end - start + 1);
+            OutputStream os = ex.getResponseBody();
+            for (int off = start; off <= end; off += BLOCK) {
+                os.write(data, off, Math.min(BLOCK, end - off + 1));
+                sleep(pace);
+            }
+        } finally {
+            ex.close();
+        }
+    }
+
+    static void sleep(int ms) {
+        if (ms <= 0) return;
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package gov.nasa.gsfc.spdf.cdfj;
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+/**
+ * AdaptiveHuffmanDecoder decodes records compressed with adaptive
+ * Huffman coding. The tree starts with the end of stream and escape
+ * symbols only. A symbol not yet in the tree is sent as the escape code
+ * followed by its 8 bits, and the tree is updated after every symbol,
+ * exactly as the encoder updated it. Weights are halved when the root
+ * reaches MAX_WEIGHT.
+ * Nodes are held in parallel arrays, kept per thread, so decoding does
+ * not allocate.
+ */
+final class AdaptiveHuffmanDecoder {
+    static final int END_OF_STREAM = 256;
+    static final int ESCAPE = 257;
+    static final int SYMBOL_COUNT = 258;
+    static final int NODE_TABLE_COUNT = (SYMBOL_COUNT*2) - 1;
+    static final int ROOT_NODE = 0;
+    static final int MAX_WEIGHT = 0x8000;
+    static final ThreadLocal<AdaptiveHuffmanDecoder> decoders =
+        new ThreadLocal<AdaptiveHuffmanDecoder>() {
+        protected AdaptiveHuffmanDecoder initialValue() {
+            return new AdaptiveHuffmanDecoder();
+        }
+    };
+    final int [] leaf = new int[SYMBOL_COUNT];
+    final int [] weight = new int[NODE_TABLE_COUNT + 1];
+    final int [] parent = new int[NODE_TABLE_COUNT + 1];
+    final int [] child = new int[NODE_TABLE_COUNT + 1];
+    final boolean [] childIsLeaf = new boolean[NODE_TABLE_COUNT + 1];
+    int nextFreeNode;
+    final BlockDecoder.BitInput in = new BlockDecoder.BitInput();
+
+    static AdaptiveHuffmanDecoder get() {
+        return decoders.get();
+    }
+
+    int decode(ByteBuffer src, byte [] dst) throws IOException {
+        initialize();
+        in.reset(src);
+        int n = 0;
+        while (n < dst.length) {
+            int c = decodeSymbol();
+            if (c == END_OF_STREAM) break;
+            dst[n++] = (byte)c;
+            update(c);
+        }
+        return n;
+    }
+
+    void initialize() {
+        Arrays.fill(weight, 0);
+        Arrays.fill(parent, 0);
+        Arrays.fill(child, 0);
+        Arrays.fill(childIsLeaf, false);
+        set(ROOT_NODE, 2, -1, ROOT_NODE + 1, false);
+        set(ROOT_NODE + 1, 1, ROOT_NODE, END_OF_STREAM, true);
+        leaf[END_OF_STREAM] = ROOT_NODE + 1;
+        set(ROOT_NODE + 2, 1, ROOT_NODE, ESCAPE, true);
+        leaf[ESCAPE] = ROOT_NODE + 2;
+        nextFreeNode = ROOT_NODE + 3;
+        for (int i = 0; i < END_OF_STREAM; i++) leaf[i] = -1;
+    }
+
+    void set(int node, int w, int p, int c, boolean isLeaf) {
+        weight[node] = w;
+        parent[node] = p;
+        child[node] = c;
+        childIsLeaf[node] = isLeaf;
+    }
+
+    int decodeSymbol() throws IOException {
+        int node = ROOT_NODE;
+        while (!childIsLeaf[node]) node = child[node] + in.bit();
+        int c = child[node];
+        if (c == ESCAPE) {
+            if ((nextFreeNode + 2) > NODE_TABLE_COUNT) {
+                throw new IOException("Corrupt adaptive Huffman data");
+            }
+            c = in.bits(8);
+            addNewNode(c);
+        }
+        return c;
+    }
+
+    void update(int c) {
+        if (weight[ROOT_NODE] == MAX_WEIGHT) rebuild();
+        int node = leaf[c];
+        while (node != -1) {
+            weight[node]++;
+            int newNode = node;
+            for (; newNode > ROOT_NODE; newNode--) {
+                if (weight[newNode - 1] >= weight[node]) break;
+            }
+            if (node != newNode) {
+                swap(node, newNode);
+                node = newNode;
+            }
+            node = parent[node];
+        }
+    }
+
+    /**
+     * halves the weights of the leaves and rebuilds the internal nodes.
+     */
+    void rebuild() {
+        int j = nextFreeNode - 1;
+        for (int i = j; i >= ROOT_NODE; i--) {
+            if (childIsLeaf[i]) {
+                copy(i, j);
+                weight[j] = (weight[j] + 1)/2;
+                j--;
+            }
+        }
+        for (int i = nextFreeNode - 2; j >= ROOT_NODE; i -= 2, j--) {
+            int w = weight[i] + weight[i + 1];
+            weight[j] = w;
+            childIsLeaf[j] = false;
+            int k = j + 1;
+            while (w < weight[k]) k++;
+            k--;
+            move(j + 1, j, k - j);
+            weight[k] = w;
+            child[k] = i;
+            childIsLeaf[k] = false;
+        }
+        for (int i = nextFreeNode - 1; i >= ROOT_NODE; i--) {
+            if (childIsLeaf[i]) {
+                leaf[child[i]] = i;
+            } else {
+                parent[child[i]] = i;
+                parent[child[i] + 1] = i;
+            }
+        }
+    }
+
+    /**
+     * exchanges the subtrees at nodes i and j, which keep their parents.
+     */
+    void swap(int i, int j) {
+        if (childIsLeaf[i]) {
+            leaf[child[i]] = j;
+        } else {
+            parent[child[i]] = j;
+            parent[child[i] + 1] = j;
+        }
+        if (childIsLeaf[j]) {
+            leaf[child[j]] = i;
+        } else {
+            parent[child[j]] = i;
+            parent[child[j] + 1] = i;
+        }
+        int w = weight[i];
+        weight[i] = weight[j];
+        weight[j] = w;
+        int c = child[i];
+        child[i] = child[j];
+        child[j] = c;
+        boolean l = childIsLeaf[i];
+        childIsLeaf[i] = childIsLeaf[j];
+        childIsLeaf[j] = l;
+    }
+
+    /**
+     * splits the lightest node into itself and a new zero weight leaf
+     * for c.
+     */
+    void addNewNode(int c) {
+        int lightest = nextFreeNode - 1;
+        int newNode = nextFreeNode;
+        int zeroWeight = nextFreeNode + 1;
+        nextFreeNode += 2;
+        copy(lightest, newNode);
+        parent[newNode] = lightest;
+        leaf[child[newNode]] = newNode;
+        child[lightest] = newNode;
+        childIsLeaf[lightest] = false;
+        set(zeroWeight, 0, lightest, c, true);
+        leaf[c] = zeroWeight;
+    }
+
+    void copy(int from, int to) {
+        set(to, weight[from], parent[from], child[from], childIsLeaf[from]);
+    }
+
+    void move(int from, int to, int count) {
+        System.arraycopy(weight, from, weight, to, count);
+        System.arraycopy(parent, from, parent, to, count);
+        System.arraycopy(child, from, child, to, count);
+        System.arraycopy(childIsLeaf, from, childIsLeaf, to, count);
+    }
+}
@@ -1,9 +1,11 @@
 package gov.nasa.gsfc.spdf.cdfj;
 import java.nio.*;
 import java.util.*;
+import java.util.concurrent.*;
 import java.lang.reflect.*;
 public abstract class BaseVarContainer implements Runnable {
     static final int chunkSize = 1024;
+    static final int minPartValues = 256*1024;
     final CDFImpl thisCDF;
     final Variable var;
     final int[] pt;
@@ -129,7 +131,128 @@ public abstract class BaseVarContainer implements Runnable {
         userBuffer = buf;
         return true;
     }
-        
+
+    Object userArray;
+    int userOffset;
+    ByteBuffer pooledBuffer;
+    int step = 1;
+
+    /**
+     * sets the number of records between records whose values are
+     * extracted, from the first of the record range, so that records
+     * not sampled are neither read nor decoded. returns false if the
+     * values have already been extracted, or the variable does not vary
+     * by record.
+     */
+    boolean setSampling(int step) {
+        if ((buffers.size() > 0) || !var.recordVariance()) return false;
+        this.step = (step < 1)?1:step;
+        return true;
+    }
+
+    /**
+     * returns the buffer holding the values of this container, if it was
+     * drawn from the pool, to the pool. Buffers obtained from getBuffer
+     * must not be used after release. The values are extracted again if
+     * the container is run again.
+     */
+    public void release() {
+        buffers.clear();
+        ByteBuffer buf = pooledBuffer;
+        pooledBuffer = null;
+        BufferPool pool = CDFFactory.bufferPool;
+        if ((buf != null) && (pool != null)) pool.put(buf);
+    }
+
+    /**
+     * same as release.
+     */
+    public void close() {
+        release();
+    }
+
+    /**
+     * decodes the values into array, which must be an array of the type
+     * of this container, starting at offset, organized as by
+     * asOneDArray(cmtarget). returns number of values decoded.
+     * Values of type double, float and long are decoded directly into
+     * array, without an intermediate buffer, unless they need to be
+     * reordered.
+     */
+    public int asOneDArray(boolean cmtarget, Object array, int offset)
+        throws Throwable {
+        if ((array == null) || (array.getClass().getComponentType() != _class)) {
+            throw new Throwable("Array of " + _class + " expected.");
+        }
+        int[] dim = var.getEffectiveDimensions();
+        boolean reorder = (dim.length > 1) && (cmtarget == var.rowMajority());
+        boolean direct = (_class == Double.TYPE) || (_class == Float.TYPE) ||
+            (_class == Long.TYPE);
+        if (reorder || !direct || (buffers.size() > 0)) {
+            boolean ran = (buffers.size() == 0);
+            run();
+            try {
+                Object values = asOneDArray(cmtarget);
+                if (values == null) {
+                    throw new Throwable("No values available.");
+                }
+                int count = Array.getLength(values);
+                checkSpace(array, offset, count);
+                System.arraycopy(values, 0, array, offset, count);
+                return count;
+            } finally {
+                if (ran) release();
+            }
+        }
+        int records = var.recordVariance()?(pt[1] - pt[0] + 1):1;
+        checkSpace(array, offset, elements*records);
+        userArray = array;
+        userOffset = offset;
+        try {
+            run();
+            if (buffers.size() == 0) {
+                throw new Throwable("No values available.");
+            }
+            return userOffset - offset;
+        } finally {
+            userArray = null;
+            buffers.clear();
+        }
+    }
+
+    static void checkSpace(Object array, int offset, int count)
+        throws Throwable {
+        if ((offset < 0) || ((offset + count) > Array.getLength(array))) {
+            throw new Throwable("Array cannot hold " + count +
+            " values at offset " + offset);
+        }
+    }
+
+    /**
+     * fills pad values for missing records into the user array, at offset,
+     * if one is set, and into _buf otherwise. returns offset of the value
+     * following those filled.
+     */
+    int putMissing(int records, ByteBuffer _buf, Object data, int offset) {
+        if (userArray == null) {
+            doMissing(records, _buf, data);
+            return offset;
+        }
+        int n = records*elements;
+        ByteBuffer fill = ByteBuffer.allocate(n*getLength());
+        fill.order(order);
+        doMissing(records, fill, data);
+        fill.position(0);
+        if (_class == Double.TYPE) {
+            fill.asDoubleBuffer().get((double[])userArray, offset, n);
+        } else if (_class == Float.TYPE) {
+            fill.asFloatBuffer().get((float[])userArray, offset, n);
+        } else {
+            fill.asLongBuffer().get((long[])userArray, offset, n);
+        }
+        return offset + n;
+    }
+
     public ByteBuffer getBuffer() {
         if (buffers.size() == 0) return null;
         ContentDescriptor cd = (ContentDescriptor)buffers.get(0);
@@ -144,13 +267,30 @@ public abstract class BaseVarContainer implements Runnable {
 
     public void run() {
         if (buffers.size() > 0) return;
-        int numberOfValues = pt[1] - pt[0] + 1;
+        try {
+            extract();
+        } catch (RuntimeException ex) {
+            release();
+            throw ex;
+        }
+    }
+
+    void extract() {
+        int numberOfValues = samples(pt[1] - pt[0] + 1);
         int words = elements*numberOfValues;
-        ByteBuffer _buf;
+        ByteBuffer _buf = null;
         int _words = words*getLength();
-        if (allocationMode == null) {
+        if (userArray != null) { // values are decoded into userArray
+        } else if (allocationMode == null) {
             if (userBuffer == null) {
-                _buf = ByteBuffer.allocateDirect(_words);
+                BufferPool pool = CDFFactory.bufferPool;
+                if (pool == null) {
+                    _buf = ByteBuffer.allocateDirect(_words);
+                } else {
+                    release();
+                    pooledBuffer = pool.get(_words);
+                    _buf = pooledBuffer.slice();
+                }
             } else {
                  _buf = userBuffer;
             }
@@ -161,11 +301,12 @@ public abstract class BaseVarContainer implements Runnable {
                 _buf = ByteBuffer.allocate(_words);
              }
         }
-        _buf.order(order);
+        if (_buf != null) _buf.order(order);
         Object data = null;
         if (overlap == null) {
             data = allocateDataArray(words);
-            doMissing(fillCount, _buf, data, -1);
+            userOffset = putMissing(samples(fillCount), _buf, data,
+                userOffset);
             if (buffers.size() == 0) {
                 buffers.add(new ContentDescriptor(_buf, pt[0], pt[1]));
             }
@@ -177,122 +318,463 @@ public abstract class BaseVarContainer implements Runnable {
             data = allocateDataArray((words < csize)?words:csize);
         }
         if (fillCount > 0) {
-            doMissing(fillCount, _buf, data, -1);
+            userOffset = putMissing(samples(fillCount), _buf, data,
+                userOffset);
         }
         Vector locations = ((CDFImpl.DataLocator)var.getLocator()).locations;
-        ByteBuffer bv;
-        int blk = 0;
-        int next = begin;
-        if (next > 0) {// position to first needed block
-            int _first = -1;
-            int prev = -1;
-            for (; blk < locations.size(); blk++) {
-                long [] loc = (long [])locations.elementAt(blk);
-                _first = (int)loc[0];
-                if (loc[1] >= next) break;
-                prev = (int)loc[1];
+        int offset = fillCount*elements;
+        ForkJoinPool xpool = CDFFactory.extractionPool;
+        Vector<int[]> parts = null;
+        if ((xpool != null) && (step == 1)) {
+            parts = split(locations, begin, end, xpool.getParallelism());
+        }
+        if (step > 1) {
+            int first = pt[0] + samples(fillCount)*step;
+            Range range = new Range(first, end, _buf, data, userOffset);
+            if (!range.extractSampled()) return;
+            userOffset = range.offset;
+        } else if ((parts == null) || (parts.size() < 2)) {
+            Range range = new Range(begin, end, _buf, data, userOffset);
+            if (!range.extract()) return;
+            userOffset = range.offset;
+        } else {
+            int userStart = userOffset - offset;
+            int base = (_buf == null)?0:_buf.position() - offset*getLength();
+            if (!extract(xpool, parts, _buf, offset, userStart)) return;
+            userOffset = userStart + words;
+            if (_buf != null) _buf.position(base + _words);
+        }
+        if (buffers.size() == 0) {
+            buffers.add(new ContentDescriptor(_buf, begin, end));
+        }
+    }
+
+    /**
+     * returns the number of records sampled from records consecutive
+     * records.
+     */
+    int samples(int records) {
+        if (step == 1) return records;
+        return (records + step - 1)/step;
+    }
+
+    /**
+     * returns the record ranges, from begin to end, into which an
+     * extraction is split, or null if it is too small to be split.
+     * Ranges other than the first begin at the first record of a block,
+     * and hold at least minPartValues values.
+     */
+    Vector<int[]> split(Vector locations, int begin, int end,
+        int parallelism) {
+        int records = end - begin + 1;
+        if (((long)records*elements) < 2L*minPartValues) return null;
+        int step = records/(4*parallelism);
+        int min = minPartValues/elements;
+        if (step < min) step = min;
+        Vector<int[]> parts = new Vector<int[]>();
+        int from = begin;
+        for (int blk = 0; blk < locations.size(); blk++) {
+            int first = (int)((long [])locations.elementAt(blk))[0];
+            if (first > end) break;
+            if ((first - from) < step) continue;
+            if ((end - first + 1) < min) break;
+            parts.add(new int[] {from, first - 1});
+            from = first;
+        }
+        parts.add(new int[] {from, end});
+        return parts;
+    }
+
+    /**
+     * extracts the record ranges parts concurrently, each into its slice
+     * of _buf, whose position is that of the first range, or of the user
+     * array from userStart, in which the first range starts at offset.
+     * returns false if a range could not be extracted.
+     */
+    boolean extract(ForkJoinPool xpool, Vector<int[]> parts, ByteBuffer _buf,
+        int offset, int userStart) {
+        Range[] ranges = new Range[parts.size()];
+        int start = parts.get(0)[0];
+        for (int i = 0; i < ranges.length; i++) {
+            int[] part = parts.get(i);
+            int _offset = offset + (part[0] - start)*elements;
+            int words = (part[1] - part[0] + 1)*elements;
+            ByteBuffer slice = null;
+            if (_buf != null) {
+                slice = _buf.duplicate();
+                int position = slice.position() + (_offset - offset)*getLength();
+                slice.limit(position + words*getLength());
+                slice.position(position);
+                slice = slice.slice();
+                slice.order(order);
             }
-            int tofill = 0;
-            if (blk == locations.size()) { // past prev available
-                tofill = end - begin + 1;
-                if (!(var.missingRecordValueIsPad() ||
-                     var.missingRecordValueIsPrevious())) return;
-            } else {
-                if (next < _first) { // some missing records
-                    tofill = _first - next;
-                    if (end < _first) tofill = end + 1 - next;
-                }
+            Object data = null;
+            if (chunking) data = allocateDataArray((words < csize)?words:csize);
+            ranges[i] = new Range(part[0], part[1], slice, data,
+                userStart + _offset);
+        }
+        ForkJoinTask[] tasks = new ForkJoinTask[ranges.length];
+        for (int i = 1; i < ranges.length; i++) {
+            tasks[i] = xpool.submit(ranges[i]);
+        }
+        RuntimeException failure = null;
+        try {
+            ranges[0].run();
+        } catch (RuntimeException ex) {
+            failure = ex;
+        }
+        for (int i = 1; i < ranges.length; i++) {
+            try {
+                tasks[i].join();
+            } catch (RuntimeException ex) {
+                if (failure == null) failure = ex;
             }
-            if (tofill > 0) {
-                if (var.missingRecordValueIsPrevious()) {
-                    doMissing(tofill, _buf, data, (blk == 0)?-1:prev);
+        }
+        if (failure != null) throw failure;
+        for (int i = 0; i < ranges.length; i++) {
+            if (!ranges[i].ok) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Range extracts the values of a range of records into a buffer, or
+     * into the user array from offset.
+     */
+    class Range implements Runnable {
+        final int begin;
+        final int end;
+        final ByteBuffer _buf;
+        final Object data;
+        int offset;
+        boolean ok;
+        int lastRecord = -1;
+
+        Range(int begin, int end, ByteBuffer _buf, Object data, int offset) {
+            this.begin = begin;
+            this.end = end;
+            this._buf = _buf;
+            this.data = data;
+            this.offset = offset;
+        }
+
+        public void run() {
+            ok = extract();
+        }
+
+        /**
+         * returns false if values could not be extracted.
+         */
+        boolean extract() {
+            Vector locations =
+                ((CDFImpl.DataLocator)var.getLocator()).locations;
+            ByteBuffer bv;
+            int blk = 0;
+            int next = begin;
+            if (next > 0) {// position to first needed block
+                int _first = -1;
+                int prev = -1;
+                for (; blk < locations.size(); blk++) {
+                    long [] loc = (long [])locations.elementAt(blk);
+                    _first = (int)loc[0];
+                    if (loc[1] >= next) break;
+                    prev = (int)loc[1];
+                }
+                int tofill = 0;
+                if (blk == locations.size()) { // past prev available
+                    tofill = end - begin + 1;
+                    if (!(var.missingRecordValueIsPad() ||
+                         var.missingRecordValueIsPrevious())) return false;
                 } else {
-                    doMissing(tofill, _buf, data,  -1);
+                    if (next < _first) { // some missing records
+                        tofill = _first - next;
+                        if (end < _first) tofill = end + 1 - next;
+                    }
                 }
-                next += tofill;
-                if (next > end) {
-                    if (buffers.size() == 0) {
-                        buffers.add(new ContentDescriptor(_buf, begin, end));
+                if (tofill > 0) {
+                    if (var.missingRecordValueIsPrevious()) {
+                        putMissing(tofill, _buf, data, (blk == 0)?-1:prev);
+                    } else {
+                        putMissing(tofill, _buf, data,  -1);
+                    }
+                    next += tofill;
+                    if (next > end) {
+                        return true;
                     }
-                    return;
                 }
             }
-        }
-        // there is valid data to send back
-        // begin may lie before blk. This is handled later
-        boolean firstBlock = true;
-        for (; blk < locations.size(); blk++) {
-            long [] loc = (long [])locations.elementAt(blk);
-            int first = (int)loc[0];
-            int last = (int)loc[1];
-
-            int count = (last - first + 1);
-            bv = thisCDF.positionBuffer( var, loc[2], count);
-            if (firstBlock) {
-                if (pt != null) {
-                    if (begin > first) {
-                        int pos = bv.position() + (begin - first)*itemSize;
-                        bv.position(pos);
-                    }
-                    if (end == begin) { // single point needed
-                        try {
-                            doData(bv, type, elements, 1, _buf, data);
-                        } catch (Throwable ex) {
-                            ex.printStackTrace();
+            // there is valid data to send back
+            // begin may lie before blk. This is handled later
+            ForkJoinPool pool = var.isCompressed()?CDFFactory.decompressionPool:
+                null;
+            int lastBlk = blk;
+            while ((lastBlk + 1) < locations.size()) {
+                if (((long [])locations.elementAt(lastBlk + 1))[0] > end) break;
+                lastBlk++;
+            }
+            ByteBuffer[] window = null;
+            int windowStart = blk;
+            boolean firstBlock = true;
+            for (; blk < locations.size(); blk++) {
+                long [] loc = (long [])locations.elementAt(blk);
+                int first = (int)loc[0];
+                int last = (int)loc[1];
+
+                int count = (last - first + 1);
+                if ((pool != null) && (blk < lastBlk) &&
+                    ((window == null) || (blk >= windowStart + window.length))) {
+                    windowStart = blk;
+                    int to = blk + 2*pool.getParallelism() - 1;
+                    window = thisCDF.positionBuffers(var, locations, blk,
+                        (to < lastBlk)?to:lastBlk, pool);
+                }
+                if ((window != null) && (blk < windowStart + window.length)) {
+                    bv = window[blk - windowStart];
+                    window[blk - windowStart] = null;
+                } else {
+                    Prefetcher.access(thisCDF, var, locations, blk, lastBlk);
+                    int needed = ((end < last)?end:last) - first + 1;
+                    bv = thisCDF.positionBuffer( var, loc[2], count,
+                        (needed < 1)?1:needed);
+                }
+                if (firstBlock) {
+                    if (pt != null) {
+                        if (begin > first) {
+                            int pos = bv.position() + (begin - first)*itemSize;
+                            bv.position(pos);
                         }
-                        if (buffers.size() == 0) {
-                            buffers.add(new ContentDescriptor(_buf,
-                            begin, end));
+                        if (end == begin) { // single point needed
+                            try {
+                                putData(bv, 1, _buf, data);
+                            } catch (Throwable ex) {
+                                ex.printStackTrace();
+                            }
+                            return true;
                         }
-                        return;
+                    }
+                    firstBlock = false;
+                } else {
+                    // pad if necessary
+                    if (next < first) { // next cannot exceed first
+                        int target = (end >= first)?first:end + 1 ;
+                        int n = target - next;
+                        if (var.missingRecordValueIsPrevious()) {
+                            int rec = (int)
+                                ((long [])locations.elementAt(blk - 1))[1];
+                            putMissing(n, _buf, data, rec);
+                        } else {
+                            putMissing(n, _buf, data,  -1);
+                        }
+                        next = target;
+                        if (next > end) break;
                     }
                 }
-                firstBlock = false;
-            } else {
-                // pad if necessary
-                if (next < first) { // next cannot exceed first
-                    int target = (end >= first)?first:end + 1 ;
-                    int n = target - next;
-                    if (var.missingRecordValueIsPrevious()) {
-                        int rec = (int)
-                            ((long [])locations.elementAt(blk - 1))[1];
-                        doMissing(n, _buf, data, rec);
-                    } else {
-                        doMissing(n, _buf, data,  -1);
+                while (next <= end) {
+                    int rem = end - next + 1;
+                    int _count = last - next + 1;
+                    if (chunking) {
+                        if (_count > recordsPerChunk) _count = recordsPerChunk;
+                    }
+                    if (_count > rem) _count = rem;
+                    try {
+                        putData(bv, _count, _buf, data);
+                    } catch (Throwable ex) {
+                        ex.printStackTrace();
+                        return false;
                     }
-                    if (target > end) break;
-                    next = first;
+                    //System.out.println(bv);
+                    //System.out.println(_buf);
+                    next += _count;
+                    lastRecord = next - 1;
+                    if (next > last) break;
                 }
+                if (next > end) break;
             }
-            while (next <= end) {
-                int rem = end - next + 1;
-                int _count = last - next + 1;
-                if (chunking) {
-                    if (_count > recordsPerChunk) _count = recordsPerChunk;
+            if (next <= end) {
+                if (var.missingRecordValueIsPrevious()) {
+                    putMissing(end - next + 1, _buf, data, (next - 1));
+                } else {
+                    putMissing(end - next + 1, _buf, data,  -1);
                 }
-                if (_count > rem) _count = rem;
+            }
+            return true;
+        }
+
+        /**
+         * decodes count records from bv into the user array, if one is
+         * set, and into _buf otherwise.
+         */
+        void putData(ByteBuffer bv, int count, ByteBuffer _buf, Object data)
+            throws Throwable {
+            if (userArray == null) {
+                doData(bv, type, elements, count, _buf, data);
+                return;
+            }
+            int n = count*elements;
+            DecodeKernel kernel = DecodeKernel.get(type);
+            if (_class == Double.TYPE) {
+                kernel.toDouble(bv, (double[])userArray, offset, n);
+            } else if (_class == Float.TYPE) {
+                kernel.toFloat(bv, (float[])userArray, offset, n);
+            } else {
+                kernel.toLong(bv, (long[])userArray, offset, n);
+            }
+            offset += n;
+        }
+
+        /**
+         * fills values for missing records, the pad value if rec is
+         * negative, and the values of record rec otherwise.
+         */
+        void putMissing(int records, ByteBuffer _buf, Object data, int rec) {
+            if (rec < 0) {
+                offset = BaseVarContainer.this.putMissing(records, _buf, data,
+                    offset);
+                lastRecord = -1;
+                return;
+            }
+            if (records <= 0) return;
+            if (lastRecord != rec) { // not the last record written
                 try {
-                    doData(bv, type, elements, _count, _buf, data);
-                } catch (Throwable ex) {
-                    ex.printStackTrace();
+                    putRecord(rec, _buf, data);
+                } catch (Throwable th) {
+                    th.printStackTrace();
+                    offset = BaseVarContainer.this.putMissing(records, _buf,
+                        data, offset);
                     return;
                 }
-                //System.out.println(bv);
-                //System.out.println(_buf);
-                next += _count;
-                if (next > last) break;
+                records--;
             }
-            if (next > end) break;
+            repeat(records, _buf);
         }
-        if (next <= end) {
-            if (var.missingRecordValueIsPrevious()) {
-                doMissing(end - next + 1, _buf, data, (next - 1));
-            } else {
-                doMissing(end - next + 1, _buf, data,  -1);
+
+        /**
+         * extracts the values of every step-th record from begin to end.
+         * Only the sampled records are decoded, and blocks holding none
+         * of them are not read.
+         */
+        boolean extractSampled() {
+            Vector locations =
+                ((CDFImpl.DataLocator)var.getLocator()).locations;
+            boolean previous = var.missingRecordValueIsPrevious();
+            int blk = 0;
+            int prev = -1;
+            int rec = begin;
+            while (rec <= end) {
+                for (; blk < locations.size(); blk++) {
+                    long [] loc = (long [])locations.elementAt(blk);
+                    if (loc[1] >= rec) break;
+                    prev = (int)loc[1];
+                }
+                long [] loc = null;
+                int last = end;
+                if (blk < locations.size()) {
+                    loc = (long [])locations.elementAt(blk);
+                    if (rec >= loc[0]) {
+                        if (loc[1] < end) last = (int)loc[1];
+                    } else { // rec is missing
+                        if (loc[0] <= end) last = (int)loc[0] - 1;
+                        loc = null;
+                    }
+                }
+                int n = (last - rec)/step + 1;
+                if (loc == null) {
+                    int fill = n;
+                    if (previous && (prev >= 0) && (lastRecord != prev)) {
+                        try { // prev is the last record of block blk - 1
+                            putRecord((long [])locations.elementAt(blk - 1),
+                                prev, _buf, data);
+                        } catch (Throwable ex) {
+                            ex.printStackTrace();
+                            return false;
+                        }
+                        fill--;
+                    }
+                    putMissing(fill, _buf, data, previous?prev:-1);
+                } else {
+                    int first = (int)loc[0];
+                    int count = (int)(loc[1] - loc[0] + 1);
+                    int needed = rec + (n - 1)*step - first + 1;
+                    ByteBuffer bv = thisCDF.positionBuffer(var, loc[2], count,
+                        needed);
+                    int pos = bv.position() + (rec - first)*itemSize;
+                    try {
+                        for (int i = 0; i < n; i++) {
+                            bv.position(pos);
+                            putData(bv, 1, _buf, data);
+                            pos += step*itemSize;
+                        }
+                    } catch (Throwable ex) {
+                        ex.printStackTrace();
+                        return false;
+                    }
+                    lastRecord = rec + (n - 1)*step;
+                }
+                rec += n*step;
             }
+            return true;
         }
-        if (buffers.size() == 0) {
-            buffers.add(new ContentDescriptor(_buf, begin, end));
+
+        /**
+         * decodes record rec into _buf, or the user array.
+         */
+        void putRecord(int rec, ByteBuffer _buf, Object data)
+            throws Throwable {
+            Vector locations =
+                ((CDFImpl.DataLocator)var.getLocator()).locations;
+            for (int blk = 0; blk < locations.size(); blk++) {
+                long [] loc = (long [])locations.elementAt(blk);
+                if ((rec < loc[0]) || (rec > loc[1])) continue;
+                putRecord(loc, rec, _buf, data);
+                return;
+            }
+            throw new Throwable("Record " + rec + " of " + var.getName() +
+                " not found.");
+        }
+
+        /**
+         * decodes record rec, of the block at loc, into _buf, or the user
+         * array.
+         */
+        void putRecord(long [] loc, int rec, ByteBuffer _buf, Object data)
+            throws Throwable {
+            int count = (int)(loc[1] - loc[0] + 1);
+            int needed = (int)(rec - loc[0] + 1);
+            ByteBuffer bv = thisCDF.positionBuffer(var, loc[2], count, needed);
+            bv.position(bv.position() + (needed - 1)*itemSize);
+            putData(bv, 1, _buf, data);
+            lastRecord = rec;
+        }
+
+        /**
+         * repeats the values of the last record written records times,
+         * doubling the span copied at each step.
+         */
+        void repeat(int records, ByteBuffer _buf) {
+            int copied = 0;
+            if (userArray == null) {
+                int size = elements*getLength();
+                int start = _buf.position() - size;
+                ByteBuffer src = _buf.duplicate();
+                while (copied < records) {
+                    int n = records - copied;
+                    if (n > (copied + 1)) n = copied + 1;
+                    src.limit(start + n*size);
+                    src.position(start);
+                    _buf.put(src);
+                    copied += n;
+                }
+                return;
+            }
+            int start = offset - elements;
+            while (copied < records) {
+                int n = records - copied;
+                if (n > (copied + 1)) n = copied + 1;
+                System.arraycopy(userArray, start, userArray, offset,
+                    n*elements);
+                offset += n*elements;
+                copied += n;
+            }
         }
     }
 
@@ -307,6 +789,7 @@ public abstract class BaseVarContainer implements Runnable {
             last = _last;
         }
         ByteBuffer getBuffer() {
+            if (buf == null) return null;
             ByteBuffer rbuf = buf.asReadOnlyBuffer();
             rbuf.order(buf.order());
             rbuf.position(0);
@@ -385,7 +868,7 @@ public abstract class BaseVarContainer implements Runnable {
     abstract void doData(ByteBuffer bv, int type, int elements, int toprocess,
         ByteBuffer buf, Object data) throws Throwable;
 
-    abstract void doMissing(int records, ByteBuffer buf, Object data, int rec);
+    abstract void doMissing(int records, ByteBuffer buf, Object data);
 
     int getLength() {
         if (_class == Long.TYPE) return 8;
@@ -408,6 +891,7 @@ public abstract class BaseVarContainer implements Runnable {
     }
 
     public Object asSampledArray(Stride stride) {
+        if (step > 1) return as1DArray(); // sampled when extracted
         int[] range = getRecordRange();
         int numberOfValues = range[1] - range[0] + 1;
         int _stride = stride.getStride(numberOfValues);
@@ -588,7 +1072,9 @@ public abstract class BaseVarContainer implements Runnable {
         int _stride = 1;
         int[] range = getRecordRange();
         int pts = range[1] - range[0] + 1;
-        if (stride != null) {
+        if (step > 1) { // sampled when extracted
+            pts = b.remaining()/(elements*getLength());
+        } else if (stride != null) {
             _stride = stride.getStride(pts);
             if (_stride > 1) {
                 int n = (pts/_stride);
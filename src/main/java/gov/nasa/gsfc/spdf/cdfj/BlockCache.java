@@ -0,0 +1,180 @@
+package gov.nasa.gsfc.spdf.cdfj;
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+import java.util.zip.*;
+/**
+ * BlockCache is a size bounded, least recently used cache of decompressed
+ * variable value records. A single instance is shared by all CDFs.
+ * Blocks are identified by the id of the CDF and the offset of the
+ * compressed record, so that reading a compressed block repeatedly, for
+ * consecutive ranges or for several elements of a variable, inflates it
+ * only once.
+ * A GZIP block read for a few records is inflated only as far as needed.
+ * It keeps its Inflater, so that a following read further into the
+ * block resumes where the previous one stopped.
+ * Cached blocks are handed out as read only views with their own
+ * position.
+ */
+final class BlockCache {
+    static long lastId;
+    final long capacity;
+    final LinkedHashMap<Key, Block> blocks =
+        new LinkedHashMap<Key, Block>(16, 0.75f, true);
+    long cached;
+    long hits;
+    long misses;
+    long evictions;
+
+    BlockCache(long capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * returns a new id for a CDF.
+     */
+    static synchronized long nextId() {
+        return ++lastId;
+    }
+
+    /**
+     * returns the cached block at offset of the CDF with the given id,
+     * or null if not cached or shorter than length. Since the record at
+     * offset may not be compressed, a null return is not counted as a
+     * miss. The caller counts it with miss() once it finds the record
+     * compressed.
+     */
+    synchronized Block get(long id, long offset, int length) {
+        Block block = blocks.get(new Key(id, offset));
+        if ((block == null) || (block.data.length < length)) return null;
+        hits++;
+        return block;
+    }
+
+    /**
+     * counts a compressed record that was not found in the cache.
+     */
+    synchronized void miss() {
+        misses++;
+    }
+
+    /**
+     * adds the block at offset of the CDF with the given id, evicting
+     * least recently used blocks as needed. Blocks larger than the
+     * capacity are not cached.
+     */
+    void put(long id, long offset, Block block) {
+        Vector<Block> evicted = new Vector<Block>();
+        int size = block.data.length;
+        synchronized (this) {
+            if (size > capacity) {
+                evicted.add(block);
+            } else {
+                Block old = blocks.put(new Key(id, offset), block);
+                if (old != null) {
+                    cached -= old.data.length;
+                    evicted.add(old);
+                }
+                cached += size;
+                Iterator<Block> it = blocks.values().iterator();
+                while ((cached > capacity) && it.hasNext()) {
+                    Block b = it.next();
+                    cached -= b.data.length;
+                    it.remove();
+                    evicted.add(b);
+                    evictions++;
+                }
+            }
+        }
+        for (int i = 0; i < evicted.size(); i++) evicted.get(i).release();
+    }
+
+    /**
+     * removes the blocks of the CDF with the given id.
+     */
+    void remove(long id) {
+        Vector<Block> removed = new Vector<Block>();
+        synchronized (this) {
+            Iterator<Map.Entry<Key, Block>> it = blocks.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Key, Block> e = it.next();
+                if (e.getKey().id != id) continue;
+                cached -= e.getValue().data.length;
+                it.remove();
+                removed.add(e.getValue());
+            }
+        }
+        for (int i = 0; i < removed.size(); i++) removed.get(i).release();
+    }
+
+    synchronized long size() {
+        return cached;
+    }
+
+    /**
+     * Block holds the decompressed values of a record. A block that is
+     * partially inflated holds the Inflater and the unconsumed input.
+     */
+    static class Block {
+        final byte [] data;
+        int produced;
+        Inflater inflater;
+        ByteBuffer input;
+
+        Block(byte [] data, int produced) {
+            this.data = data;
+            this.produced = produced;
+        }
+
+        /**
+         * returns a view of the first produced bytes, positioned at 0,
+         * inflating further if fewer than needed bytes are available.
+         * returns null if needed bytes cannot be produced.
+         */
+        synchronized ByteBuffer view(int needed) throws IOException {
+            if (produced < needed) {
+                if (inflater == null) return null;
+                try {
+                    produced = BlockInflater.inflate(inflater, input, data,
+                        produced, needed);
+                } catch (IOException ex) {
+                    release();
+                    throw ex;
+                }
+                if ((produced == data.length) || inflater.finished()) {
+                    release();
+                }
+                if (produced < needed) return null;
+            }
+            ByteBuffer _buf = ByteBuffer.wrap(data, 0, produced);
+            return _buf.asReadOnlyBuffer();
+        }
+
+        /**
+         * returns the Inflater, if any, to the pool.
+         */
+        synchronized void release() {
+            if (inflater == null) return;
+            BlockInflater.put(inflater);
+            inflater = null;
+            input = null;
+        }
+    }
+
+    static class Key {
+        final long id;
+        final long offset;
+        Key(long id, long offset) {
+            this.id = id;
+            this.offset = offset;
+        }
+        public int hashCode() {
+            return (int)(id*31 + (offset^(offset>>>32)));
+        }
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key k = (Key)o;
+            return (k.id == id) && (k.offset == offset);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package gov.nasa.gsfc.spdf.cdfj;
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+/**
+ * BlockDecoder decodes compressed variable value records according to
+ * the compression type in the variable's CPR: run length encoding of
+ * zeros, static and adaptive Huffman coding, and GZIP.
+ */
+final class BlockDecoder {
+    static final int NONE = 0;
+    static final int RLE = 1;
+    static final int HUFF = 2;
+    static final int AHUFF = 3;
+    static final int GZIP = 5;
+
+    private BlockDecoder() {
+    }
+
+    /**
+     * decodes the data between position and limit of src, compressed
+     * with the given CDF compression type, into dst.
+     * returns number of bytes decoded, which is less than dst.length
+     * only if the compressed data ends early.
+     */
+    static int decode(int ctype, ByteBuffer src, byte [] dst)
+        throws IOException {
+        switch (ctype) {
+        case GZIP:
+            return BlockInflater.inflate(src, dst);
+        case RLE:
+            return rle(src.duplicate(), dst);
+        case HUFF:
+            return HuffmanDecoder.get().decode(src.duplicate(), dst);
+        case AHUFF:
+            return AdaptiveHuffmanDecoder.get().decode(src.duplicate(), dst);
+        default:
+            throw new IOException("Unsupported compression type " + ctype);
+        }
+    }
+
+    /**
+     * decodes run length encoding of zeros, in which a zero byte is
+     * followed by one less than the number of zeros in the run.
+     */
+    static int rle(ByteBuffer src, byte [] dst) throws IOException {
+        int n = 0;
+        while (src.hasRemaining() && (n < dst.length)) {
+            byte b = src.get();
+            if (b != 0) {
+                dst[n++] = b;
+                continue;
+            }
+            if (!src.hasRemaining()) throw new EOFException("Truncated run");
+            int count = (src.get() & 0xff) + 1;
+            if (count > (dst.length - n)) count = dst.length - n;
+            Arrays.fill(dst, n, n + count, (byte)0);
+            n += count;
+        }
+        return n;
+    }
+
+    /**
+     * BitInput reads bits, most significant first, from a ByteBuffer,
+     * through a 64 bit accumulator.
+     */
+    static class BitInput {
+        ByteBuffer src;
+        long acc;
+        int avail;
+
+        void reset(ByteBuffer src) {
+            this.src = src;
+            avail = 0;
+        }
+
+        void fill() {
+            while ((avail <= 56) && src.hasRemaining()) {
+                acc = (acc << 8) | (src.get() & 0xff);
+                avail += 8;
+            }
+        }
+
+        int bit() throws IOException {
+            if (avail == 0) {
+                fill();
+                if (avail == 0) {
+                    throw new EOFException("Truncated compressed data");
+                }
+            }
+            avail--;
+            return (int)(acc >>> avail) & 1;
+        }
+
+        int bits(int count) throws IOException {
+            int value = 0;
+            for (int i = 0; i < count; i++) value = (value << 1) | bit();
+            return value;
+        }
+
+        /**
+         * returns the next count bits without consuming them, padded
+         * with zeros past the end of the data.
+         */
+        int peek(int count) {
+            if (avail < count) fill();
+            if (avail < count) {
+                return (int)(acc << (count - avail)) & ((1 << count) - 1);
+            }
+            return (int)(acc >>> (avail - count)) & ((1 << count) - 1);
+        }
+
+        void skip(int count) throws IOException {
+            if (count > avail) {
+                throw new EOFException("Truncated compressed data");
+            }
+            avail -= count;
+        }
+    }
+}
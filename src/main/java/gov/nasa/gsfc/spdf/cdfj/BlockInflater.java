@@ -0,0 +1,150 @@
+package gov.nasa.gsfc.spdf.cdfj;
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+import java.util.zip.*;
+/**
+ * BlockInflater inflates GZIP compressed variable value records without
+ * the streams, buffers and native state that a GZIPInputStream allocates
+ * for every record. The GZIP header is parsed here, and the deflate data
+ * is inflated by raw Inflaters kept in a pool. Input is read from the
+ * record in place when it is backed by an array, and through a per
+ * thread chunk otherwise.
+ */
+final class BlockInflater {
+    static final int CHUNK = 16*1024;
+    static final int MAX_POOLED = 16;
+    static final ArrayDeque<Inflater> pool = new ArrayDeque<Inflater>();
+    static final ThreadLocal<byte[]> chunk = new ThreadLocal<byte[]>() {
+        protected byte[] initialValue() {
+            return new byte[CHUNK];
+        }
+    };
+
+    private BlockInflater() {
+    }
+
+    /**
+     * inflates the GZIP data between position and limit of src into dst.
+     * returns number of bytes inflated, which is less than dst.length
+     * only if the compressed data ends early.
+     */
+    static int inflate(ByteBuffer src, byte [] dst) throws IOException {
+        ByteBuffer _buf = src.duplicate();
+        skipHeader(_buf);
+        Inflater inf = get();
+        try {
+            return inflate(inf, _buf, dst, 0, dst.length);
+        } finally {
+            put(inf);
+        }
+    }
+
+    /**
+     * returns a block of length bytes, none inflated yet, for the GZIP
+     * data between position and limit of src. The block holds a pooled
+     * Inflater until it is complete or released.
+     */
+    static BlockCache.Block start(ByteBuffer src, int length)
+        throws IOException {
+        ByteBuffer _buf = src.duplicate();
+        skipHeader(_buf);
+        BlockCache.Block block = new BlockCache.Block(new byte[length], 0);
+        block.inflater = get();
+        block.input = _buf;
+        return block;
+    }
+
+    /**
+     * continues inflating input with inf into dst, from off, until needed
+     * bytes of dst are filled or the data ends. input is left positioned
+     * at the first byte not consumed by inf, so that inflation can be
+     * resumed later. returns the offset in dst reached.
+     */
+    static int inflate(Inflater inf, ByteBuffer input, byte [] dst, int off,
+        int needed) throws IOException {
+        boolean fed = false;
+        try {
+            byte [] ba = null;
+            while (off < needed) {
+                if ((!fed || inf.needsInput()) && input.hasRemaining()) {
+                    int n = input.remaining();
+                    if (input.hasArray()) {
+                        inf.setInput(input.array(),
+                            input.arrayOffset() + input.position(), n);
+                        input.position(input.limit());
+                    } else {
+                        if (ba == null) ba = chunk.get();
+                        if (n > ba.length) n = ba.length;
+                        input.get(ba, 0, n);
+                        inf.setInput(ba, 0, n);
+                    }
+                    fed = true;
+                }
+                int got = inf.inflate(dst, off, needed - off);
+                off += got;
+                if (inf.finished()) break;
+                if (got == 0) {
+                    if (inf.needsDictionary()) {
+                        throw new ZipException("Preset dictionary not supported");
+                    }
+                    if (inf.needsInput() && !input.hasRemaining()) break;
+                }
+            }
+        } catch (DataFormatException ex) {
+            throw new ZipException(ex.getMessage());
+        }
+        if (fed) input.position(input.position() - inf.getRemaining());
+        return off;
+    }
+
+    /**
+     * positions buf past the GZIP header at its position.
+     */
+    static void skipHeader(ByteBuffer buf) throws IOException {
+        try {
+            if (((buf.get() & 0xff) != 0x1f) || ((buf.get() & 0xff) != 0x8b)) {
+                throw new ZipException("Not in GZIP format");
+            }
+            if (buf.get() != Deflater.DEFLATED) {
+                throw new ZipException("Unsupported compression method");
+            }
+            int flags = buf.get() & 0xff;
+            buf.position(buf.position() + 6); // mtime, xfl, os
+            if ((flags & 4) != 0) { // FEXTRA
+                int xlen = (buf.get() & 0xff) | ((buf.get() & 0xff) << 8);
+                buf.position(buf.position() + xlen);
+            }
+            if ((flags & 8) != 0) { // FNAME
+                while (buf.get() != 0) ;
+            }
+            if ((flags & 16) != 0) { // FCOMMENT
+                while (buf.get() != 0) ;
+            }
+            if ((flags & 2) != 0) buf.position(buf.position() + 2); // FHCRC
+        } catch (BufferUnderflowException ex) {
+            throw new EOFException("Truncated GZIP header");
+        } catch (IllegalArgumentException ex) {
+            throw new EOFException("Truncated GZIP header");
+        }
+    }
+
+    static Inflater get() {
+        synchronized (pool) {
+            Inflater inf = pool.poll();
+            if (inf != null) return inf;
+        }
+        return new Inflater(true);
+    }
+
+    static void put(Inflater inf) {
+        inf.reset();
+        synchronized (pool) {
+            if (pool.size() < MAX_POOLED) {
+                pool.push(inf);
+                return;
+            }
+        }
+        inf.end();
+    }
+}
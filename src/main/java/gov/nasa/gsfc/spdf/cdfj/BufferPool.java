@@ -0,0 +1,82 @@
+package gov.nasa.gsfc.spdf.cdfj;
+import java.nio.*;
+import java.util.*;
+/**
+ * BufferPool holds direct buffers released by variable containers, so
+ * that the buffers of later extractions are reused rather than allocated.
+ * Buffers are pooled by size class, a power of two not smaller than
+ * MIN_SIZE, and a request is served by a buffer of its class, whose limit
+ * is set to the size requested. Released buffers are kept while the
+ * total pooled is within the capacity, and are otherwise left to the
+ * garbage collector.
+ */
+final class BufferPool {
+    static final int MIN_CLASS = 10;
+    static final int MAX_CLASS = 30;
+    static final int MIN_SIZE = 1 << MIN_CLASS;
+    final long capacity;
+    final ArrayList<ArrayDeque<ByteBuffer>> free =
+        new ArrayList<ArrayDeque<ByteBuffer>>();
+    long pooled;
+    long allocations;
+    long reuses;
+
+    BufferPool(long capacity) {
+        this.capacity = capacity;
+        for (int c = 0; c <= MAX_CLASS; c++) {
+            free.add(new ArrayDeque<ByteBuffer>());
+        }
+    }
+
+    /**
+     * returns the size class of a buffer of size bytes.
+     */
+    static int sizeClass(int size) {
+        if (size <= MIN_SIZE) return MIN_CLASS;
+        return 32 - Integer.numberOfLeadingZeros(size - 1);
+    }
+
+    /**
+     * returns a direct buffer with position 0 and limit size, reusing a
+     * released buffer of the size class if one is available.
+     */
+    ByteBuffer get(int size) {
+        int c = sizeClass(size);
+        ByteBuffer buf = null;
+        synchronized (this) {
+            if (c <= MAX_CLASS) buf = free.get(c).poll();
+            if (buf == null) {
+                allocations++;
+            } else {
+                pooled -= buf.capacity();
+                reuses++;
+            }
+        }
+        if (buf == null) {
+            buf = ByteBuffer.allocateDirect((c <= MAX_CLASS)?(1 << c):size);
+        }
+        buf.clear();
+        buf.limit(size);
+        return buf;
+    }
+
+    /**
+     * returns buf, obtained from get, to the pool.
+     */
+    void put(ByteBuffer buf) {
+        int size = buf.capacity();
+        if (!buf.isDirect() || (size < MIN_SIZE) ||
+            (Integer.bitCount(size) != 1)) return;
+        int c = sizeClass(size);
+        if (c > MAX_CLASS) return;
+        synchronized (this) {
+            if ((pooled + size) > capacity) return;
+            free.get(c).push(buf);
+            pooled += size;
+        }
+    }
+
+    synchronized long size() {
+        return pooled;
+    }
+}
@@ -3,6 +3,7 @@ import java.net.*;
 import java.io.*;
 import java.nio.*;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.zip.*;
 import java.nio.channels.FileChannel;
 import java.nio.ByteBuffer;
@@ -17,13 +18,20 @@ public class ByteBufferURLReader {
     byte[] block = chunk.getBlock();
     FileChannel cacheFileChannel;
     ByteBuffer buffer;
+    URL url;
+    boolean rangesAccepted;
+    String validator;
+    int connections = 1;
+    int retries = 3;
     public ByteBufferURLReader(URL url) throws IOException {
+        this.url = url;
+        boolean gzipped = url.getPath().trim().endsWith(".gz");
+        if (!gzipped && probe()) return;
         URLConnection con = url.openConnection();
         con.connect();
         len = con.getContentLength();
         if (len >= 0) chunk.setLength(len);
         is = con.getInputStream();
-        boolean gzipped = url.getPath().trim().endsWith(".gz");
         if (gzipped) is = new GZIPInputStream(is);
     }
 
@@ -51,7 +59,81 @@ public class ByteBufferURLReader {
         block = chunk.getBlock();
     }
 
+    /**
+     * sets the number of concurrent connections used by getBuffer().
+     * If more than one, and the server accepts byte range requests for a
+     * resource of known length, the resource is split into ranges of
+     * chunk size bytes which are fetched concurrently. Each range is
+     * requested with If-Range, and checked against the Content-Range of
+     * the response, so that a resource that changes during the download
+     * fails it rather than being assembled from two versions.
+     */
+    public void setConnections(int connections) {
+        this.connections = connections;
+    }
+
+    /**
+     * sets the number of times a failed range is fetched again before
+     * getBuffer() gives up.
+     */
+    public void setRetries(int retries) {
+        this.retries = retries;
+    }
+
+    /**
+     * finds the length of an HTTP resource, and whether the server
+     * accepts byte range requests for it, with a HEAD request, so that
+     * the resource is not transferred until it is known whether it will
+     * be read whole or in ranges. The ETag or Last-Modified date of the
+     * resource is kept to validate later range requests. returns false
+     * if the length could not be found this way.
+     */
+    boolean probe() throws IOException {
+        URLConnection con = url.openConnection();
+        if (!(con instanceof HttpURLConnection)) return false;
+        HttpURLConnection hcon = (HttpURLConnection)con;
+        hcon.setRequestMethod("HEAD");
+        try {
+            if (hcon.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                return false;
+            }
+            int length = hcon.getContentLength();
+            if (length < 0) return false;
+            len = length;
+            chunk.setLength(len);
+            rangesAccepted = (len > 0) &&
+                "bytes".equalsIgnoreCase(hcon.getHeaderField("Accept-Ranges"));
+            validator = HttpRangeReader.validator(hcon);
+            return true;
+        } finally {
+            hcon.disconnect();
+        }
+    }
+
+    /**
+     * opens the stream from which the resource is read whole, if it is
+     * not open. A length that is not known, as for a chunked response, is
+     * checked when the stream ends.
+     */
+    void open() throws IOException {
+        if (is != null) return;
+        URLConnection con = url.openConnection();
+        con.connect();
+        int length = con.getContentLength();
+        if ((len >= 0) && (length >= 0) && (length != len)) {
+            if (con instanceof HttpURLConnection) {
+                ((HttpURLConnection)con).disconnect();
+            }
+            throw new IOException("Length of " + url + " changed from " +
+                len + " to " + length);
+        }
+        is = con.getInputStream();
+    }
+
     public ByteBuffer getBuffer() throws IOException {
+        if ((connections > 1) && rangesAccepted && (len > chunk.chunkSize)) {
+            return getBufferParallel();
+        }
         Vector<ByteBuffer> buffers = new Vector<ByteBuffer>();
         while (!eof) {
             if (cacheFileChannel == null) {
@@ -83,6 +165,114 @@ public class ByteBufferURLReader {
         return ball.asReadOnlyBuffer();
     }
 
+    ByteBuffer getBufferParallel() throws IOException {
+        if (is != null) is.close();
+        final ByteBuffer target = (cacheFileChannel == null)?
+            ByteBuffer.allocateDirect(len):null;
+        final long base = (cacheFileChannel == null)?0:
+            cacheFileChannel.position();
+        int nrange = (len + chunk.chunkSize - 1)/chunk.chunkSize;
+        ExecutorService executor = Executors.newFixedThreadPool(
+            Math.min(connections, nrange));
+        Vector<Future<Integer>> results = new Vector<Future<Integer>>();
+        for (int i = 0; i < nrange; i++) {
+            final int start = i*chunk.chunkSize;
+            final int end = Math.min(start + chunk.chunkSize, len);
+            results.add(executor.submit(new Callable<Integer>() {
+                public Integer call() throws IOException {
+                    IOException last = null;
+                    for (int attempt = 0; attempt <= retries; attempt++) {
+                        try {
+                            return readRange(start, end, target, base);
+                        } catch (IOException ex) {
+                            last = ex;
+                        }
+                    }
+                    throw last;
+                }
+            }));
+        }
+        executor.shutdown();
+        try {
+            for (int i = 0; i < results.size(); i++) {
+                total += results.get(i).get();
+            }
+        } catch (InterruptedException ex) {
+            executor.shutdownNow();
+            throw new InterruptedIOException(ex.toString());
+        } catch (ExecutionException ex) {
+            executor.shutdownNow();
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) throw (IOException)cause;
+            throw new IOException(cause.toString());
+        }
+        eof = true;
+        if (cacheFileChannel != null) {
+            cacheFileChannel.position(base + len);
+            FileChannel.MapMode mode = FileChannel.MapMode.READ_ONLY;
+            return cacheFileChannel.map(mode, 0l, base + len);
+        }
+        target.position(0);
+        return target.asReadOnlyBuffer();
+    }
+
+    /**
+     * fetches bytes start through end - 1 with a range request, into
+     * target if not null, else into the cache file channel at
+     * base + start. returns the number of bytes fetched.
+     */
+    int readRange(int start, int end, ByteBuffer target, long base)
+        throws IOException {
+        HttpURLConnection con = (HttpURLConnection)url.openConnection();
+        String range = start + "-" + (end - 1);
+        con.setRequestProperty("Range", "bytes=" + range);
+        if (validator != null) con.setRequestProperty("If-Range", validator);
+        InputStream in = null;
+        try {
+            int code = con.getResponseCode();
+            if (code != HttpURLConnection.HTTP_PARTIAL) {
+                con.disconnect();
+                if (code == HttpURLConnection.HTTP_OK) {
+                    throw new IOException(url + " has changed since it " +
+                        "was opened");
+                }
+                throw new IOException("Range request returned " + code);
+            }
+            String returned = con.getHeaderField("Content-Range");
+            if (!("bytes " + range + "/" + len).equals(returned)) {
+                con.disconnect();
+                throw new IOException("Range request for bytes " + range +
+                    " of " + len + " returned " + returned);
+            }
+            in = con.getInputStream();
+            byte [] ba = chunk.getBlock();
+            ByteBuffer _buf = null;
+            if (target != null) {
+                _buf = target.duplicate();
+                _buf.position(start);
+                _buf.limit(end);
+            }
+            int pos = start;
+            while (pos < end) {
+                int n = in.read(ba, 0, Math.min(ba.length, end - pos));
+                if (n == -1) throw new IOException("Premature end of data");
+                if (_buf != null) {
+                    _buf.put(ba, 0, n);
+                } else {
+                    ByteBuffer bb = ByteBuffer.wrap(ba, 0, n);
+                    long fpos = base + pos;
+                    while (bb.hasRemaining()) {
+                        fpos += cacheFileChannel.write(bb, fpos);
+                    }
+                }
+                pos += n;
+            }
+            return end - start;
+        } finally {
+            if (in != null) in.close();
+        }
+    }
+
     public ByteBuffer read() throws IOException {
         ByteBuffer buf = chunk.allocateBuffer();
         _read(buf);
@@ -96,6 +286,7 @@ public class ByteBufferURLReader {
     }
 
     private void _read(ByteBuffer buffer) throws IOException {
+        open();
         int count = 0;
         int n;
         buffer.position(0);
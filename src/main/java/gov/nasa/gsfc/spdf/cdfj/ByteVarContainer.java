@@ -42,14 +42,8 @@ public class ByteVarContainer extends BaseVarContainer implements
         return null;
     }
 
-    void doMissing(int records, ByteBuffer buf, Object _data, int rec) {
-        byte[] repl = null;
-        try {
-            repl = (rec < 0)?bpad:var.asByteArray(new int[]{rec});
-        } catch(Throwable th) {
-            th.printStackTrace();
-            System.out.println("Should not see this.");
-        }
+    void doMissing(int records, ByteBuffer buf, Object _data) {
+        byte[] repl = bpad;
         int rem = records;
         byte[] ba = new byte[rem*elements];
         int n = 0;
@@ -28,6 +28,7 @@ public interface CDF2 extends CDFCore {
     public final int OFFSET_FLAGS = 28;
     public final int OFFSET_sRecords = 32;
     public final int OFFSET_RECORDS = 8;
+    public final int OFFSET_CPR = 56;
     public final int OFFSET_BLOCKING_FACTOR = 60;
     // data
     public final int OFFSET_NEXT_VXR = 8;
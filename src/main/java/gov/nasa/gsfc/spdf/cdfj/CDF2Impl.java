@@ -10,11 +10,10 @@ final class CDF2Impl extends CDFImpl implements CDF2, java.io.Serializable {
     public int OFFSET_zNumDims;
     public int VAR_OFFSET_NUM_ELEMENTS;
     public int OFFSET_NUM;
-    FileChannel fc;
-    public CDF2Impl(ByteBuffer buf, int release, FileChannel  ch) throws
+    public CDF2Impl(ByteBuffer buf, int release, ChannelReader reader) throws
         Throwable {
         super(buf);
-        fc = ch;
+        this.reader = reader;
         if (release < 5) {
             VAR_OFFSET_NAME = 192;
             VAR_OFFSET_NUM_ELEMENTS = 48 + 128;
@@ -75,7 +74,7 @@ final class CDF2Impl extends CDFImpl implements CDF2, java.io.Serializable {
         }
         buf.position(0);
         variableTable = variables();
-        attributeTable = attributes();
+        if (!lazy) attributeTable = attributes();
     }
     protected CDF2Impl(ByteBuffer buf, int release) throws Throwable {
         this(buf, release, null);
@@ -98,6 +97,7 @@ final class CDF2Impl extends CDFImpl implements CDF2, java.io.Serializable {
         offset_NUM = OFFSET_NUM;
         offset_FLAGS = OFFSET_FLAGS;
         offset_sRecords = OFFSET_sRecords;
+        offset_CPR = OFFSET_CPR;
         offset_BLOCKING_FACTOR = OFFSET_BLOCKING_FACTOR;
         offset_VAR_DATATYPE = VAR_OFFSET_DATATYPE;
         offset_zNumDims = OFFSET_zNumDims;
@@ -113,15 +113,13 @@ final class CDF2Impl extends CDFImpl implements CDF2, java.io.Serializable {
     }
 
     public String getString(long offset)  {
-        if (fc == null) return getString(offset, MAX_STRING_SIZE);
-        ByteBuffer _buf;
+        if (reader == null) return getString(offset, MAX_STRING_SIZE);
         try {
-            _buf = getRecord(offset, MAX_STRING_SIZE);
+            return reader.getString(offset, MAX_STRING_SIZE);
         } catch (Throwable th) {
             th.printStackTrace();
             return null;
         }
-        return getString(_buf, MAX_STRING_SIZE);
     }
 
     public int lowOrderInt(ByteBuffer buf) {
@@ -133,31 +131,17 @@ final class CDF2Impl extends CDFImpl implements CDF2, java.io.Serializable {
     }
 
     protected ByteBuffer getRecord(long offset)  {
-        if (fc == null) return super.getRecord(offset);
-        ByteBuffer lenBuf = ByteBuffer.allocate(4);
-        synchronized (fc) {
-            try {
-                fc.position((long)offset + 4);
-                fc.read(lenBuf);
-                int size = lenBuf.getInt(0);
-                return getRecord(offset, size);
-            } catch (Throwable ex) {
-                ex.printStackTrace();
-                return null;
-            }
+        if (reader == null) return super.getRecord(offset);
+        try {
+            return reader.getRecord(offset, 0);
+        } catch (Throwable ex) {
+            ex.printStackTrace();
+            return null;
         }
     }
 
     protected ByteBuffer getRecord(long offset, int size) throws Throwable {
-        ByteBuffer bb = ByteBuffer.allocate(size);
-        fc.position((long)offset);
-        int got = fc.read(bb);
-        if (got != size) {
-            System.out.println("Needed " + size + " bytes. Got " + got);
-            return null;
-        }
-        bb.position(0);
-        return bb;
+        return reader.read(offset, size);
     }
 
     public long longInt(ByteBuffer buf) {
@@ -26,6 +26,7 @@ public interface CDF3 extends CDFCore {
     public final int OFFSET_FLAGS = 44;
     public final int OFFSET_sRecords = 48;
     public final int OFFSET_RECORDS = 12;
+    public final int OFFSET_CPR = 72;
     public final int OFFSET_BLOCKING_FACTOR = 80;
     // data
     public final int OFFSET_NEXT_VXR = 12;
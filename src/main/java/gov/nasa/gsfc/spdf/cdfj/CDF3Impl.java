@@ -7,10 +7,17 @@ import java.nio.channels.*;
 import java.util.zip.*;
 final class CDF3Impl extends CDFImpl implements CDF3, java.io.Serializable {
     public long GDROffset;
-    FileChannel fc;
-    protected CDF3Impl(ByteBuffer buf, FileChannel ch) throws Throwable {
-        super(buf);
-        fc = ch;
+    protected CDF3Impl(ByteBuffer buf, ChannelReader reader) throws Throwable {
+        this(buf, reader, null);
+    }
+    CDF3Impl(SegmentedBuffer segments) throws Throwable {
+        this(segments.getSegment(0), null, segments);
+    }
+    private CDF3Impl(ByteBuffer buf, ChannelReader reader,
+        SegmentedBuffer segments)
+        throws Throwable {
+        super(buf, segments);
+        this.reader = reader;
         setOffsets();
         thisCDF = this;
         IntBuffer ibuf = buf.asIntBuffer();
@@ -35,36 +42,36 @@ final class CDF3Impl extends CDFImpl implements CDF3, java.io.Serializable {
         ibuf.get();
         increment = ibuf.get();
         // validate and extract GDR info
-        int pos = (int)GDROffset + 8;
-        buf.position(pos);
+        ByteBuffer gbuf = getRecord(GDROffset);
+        gbuf.position(8);
         int x;
-        if ((x = buf.getInt()) != GDR_RECORD) {
+        if ((x = gbuf.getInt()) != GDR_RECORD) {
             throw new Throwable("Bad GDR type " + x);
         }
-        rVDRHead = buf.getLong();
-        zVDRHead = buf.getLong();
-        ADRHead = buf.getLong();
-        long CDFSize = buf.getLong();
-        numberOfRVariables = buf.getInt();
-        numberOfAttributes = buf.getInt();
-        buf.getInt(); // skip rMaxRec
-        int numberOfRDims = buf.getInt();
-        numberOfZVariables = buf.getInt();
-        buf.getInt(); // skip UIRhead
-        buf.getInt(); // skip UIRhead
-        buf.getInt(); // skip rfuC
-        lastLeapSecondId = buf.getInt(); //since 3.6
+        rVDRHead = gbuf.getLong();
+        zVDRHead = gbuf.getLong();
+        ADRHead = gbuf.getLong();
+        long CDFSize = gbuf.getLong();
+        numberOfRVariables = gbuf.getInt();
+        numberOfAttributes = gbuf.getInt();
+        gbuf.getInt(); // skip rMaxRec
+        int numberOfRDims = gbuf.getInt();
+        numberOfZVariables = gbuf.getInt();
+        gbuf.getInt(); // skip UIRhead
+        gbuf.getInt(); // skip UIRhead
+        gbuf.getInt(); // skip rfuC
+        lastLeapSecondId = gbuf.getInt(); //since 3.6
         rDimSizes = new int[numberOfRDims];
         if (numberOfRDims > 0) { // skip next integer field
-            buf.getInt();
+            gbuf.getInt();
             for (int i = 0; i < rDimSizes.length; i++) {
-                rDimSizes[i] = buf.getInt();
+                rDimSizes[i] = gbuf.getInt();
             }
         }
         buf.position(0);
 //      if (ch == null) {
             variableTable = variables();
-            attributeTable = attributes();
+            if (!lazy) attributeTable = attributes();
 //      }
     }
     protected CDF3Impl(ByteBuffer buf) throws Throwable {
@@ -88,6 +95,7 @@ final class CDF3Impl extends CDFImpl implements CDF3, java.io.Serializable {
         offset_NUM = OFFSET_NUM;
         offset_FLAGS = OFFSET_FLAGS;
         offset_sRecords = OFFSET_sRecords;
+        offset_CPR = OFFSET_CPR;
         offset_BLOCKING_FACTOR = OFFSET_BLOCKING_FACTOR;
         offset_VAR_DATATYPE = VAR_OFFSET_DATATYPE;
         offset_zNumDims = OFFSET_zNumDims;
@@ -103,15 +111,13 @@ final class CDF3Impl extends CDFImpl implements CDF3, java.io.Serializable {
     }
 
     public String getString(long offset)  {
-        if (fc == null) return getString(offset, MAX_STRING_SIZE);
-        ByteBuffer _buf;
+        if (reader == null) return getString(offset, MAX_STRING_SIZE);
         try {
-            _buf = getRecord(offset, MAX_STRING_SIZE);
+            return reader.getString(offset, MAX_STRING_SIZE);
         } catch (Throwable th) {
             th.printStackTrace();
             return null;
         }
-        return getString(_buf, MAX_STRING_SIZE);
     }
 
     public int lowOrderInt(ByteBuffer buf) {
@@ -123,31 +129,17 @@ final class CDF3Impl extends CDFImpl implements CDF3, java.io.Serializable {
     }
 
     protected ByteBuffer getRecord(long offset)  {
-        if (fc == null) return super.getRecord(offset);
-        ByteBuffer lenBuf = ByteBuffer.allocate(4);
-        synchronized (fc) {
-            try {
-                fc.position((long)offset + 4);
-                fc.read(lenBuf);
-                int size = lenBuf.getInt(0);
-                return getRecord(offset, size);
-            } catch (Throwable ex) {
-                ex.printStackTrace();
-                return null;
-            }
+        if (reader == null) return super.getRecord(offset);
+        try {
+            return reader.getRecord(offset, 4);
+        } catch (Throwable ex) {
+            ex.printStackTrace();
+            return null;
         }
     }
 
     protected ByteBuffer getRecord(long offset, int size) throws Throwable {
-        ByteBuffer bb = ByteBuffer.allocate(size);
-        fc.position((long)offset);
-        int got = fc.read(bb);
-        if (got != size) {
-            System.out.println("Needed " + size + " bytes. Got " + got);
-            return null;
-        }
-        bb.position(0);
-        return bb;
+        return reader.read(offset, size);
     }
 
     public long longInt(ByteBuffer buf) {
@@ -3,11 +3,13 @@ import java.nio.*;
 import java.io.*;
 import java.net.*;
 import java.nio.channels.*;
+import java.util.concurrent.*;
 import java.util.zip.*;
 import java.util.*;
 /**
  * CDFFactory creates an instance of CDFImpl from a CDF source.
- * The source CDF can  be a file, a byte array, or a URL.
+ * The source CDF can  be a file, a byte array, a URL, or any
+ * SeekableByteChannel.
  */
 public final class CDFFactory {
     public static final long CDF3_MAGIC =((long)0xcdf3 << 48) +
@@ -18,8 +20,19 @@ public final class CDFFactory {
         ((long)0x0001 << 32) + 0x0000ffff;
     public static final long CDF2_MAGIC_DOT5 = ((long)0x0000ffff << 32) +
          0x0000ffff;
-    static Map cdfMap = Collections.synchronizedMap(new WeakHashMap());
     static Long maxMappedMemory;
+    static long segmentSize = 1L << 30;
+    static long segmentThreshold = Integer.MAX_VALUE;
+    static boolean lazyMetadata;
+    static URLCache urlCache;
+    static volatile boolean unmapOnClose;
+    static File spillDirectory = new File(System.getProperty("java.io.tmpdir"),
+        "cdfj-spill");
+    static long spillCapacity = SpillFile.DEFAULT_CAPACITY;
+    static volatile ForkJoinPool decompressionPool;
+    static volatile ForkJoinPool extractionPool;
+    static volatile BufferPool bufferPool;
+    static volatile BlockCache blockCache;
 
     private CDFFactory() {
     }
@@ -37,6 +50,34 @@ public final class CDFFactory {
         return getVersion(buf);
     }
 
+    /**
+     * creates  CDFImpl object from a byte array.
+     * If copy is true, the contents of ba are copied, as by
+     * {@link #getCDF(byte[])}. Otherwise the CDFImpl reads ba in place
+     * through a read only view: ba remains owned by the caller, and must
+     * not be modified while the CDFImpl is in use.
+     */
+    public static CDFImpl getCDF(byte [] ba, boolean copy) throws Throwable {
+        if (copy) return getCDF(ba);
+        return getVersion(ByteBuffer.wrap(ba).asReadOnlyBuffer());
+    }
+
+    /**
+     * creates  CDFImpl object from the remaining bytes of a buffer.
+     * If copy is true, the contents are copied into a new direct buffer.
+     * Otherwise the CDFImpl reads buf in place through a read only view,
+     * and the position of buf is left unchanged: buf remains owned by the
+     * caller, and its contents must not be modified while the CDFImpl is
+     * in use.
+     */
+    public static CDFImpl getCDF(ByteBuffer buf, boolean copy)
+        throws Throwable {
+        if (copy) return getCDF(buf);
+        ByteBuffer rbuf = buf.slice().asReadOnlyBuffer();
+        rbuf.order(buf.order());
+        return getVersion(rbuf);
+    }
+
     static CDFImpl getCDF(ByteBuffer buf) throws Throwable {
         ByteBuffer rbuf;
         synchronized (buf) {
@@ -50,15 +91,22 @@ public final class CDFFactory {
     }
 
     static CDFImpl getVersion(ByteBuffer buf) throws Throwable {
+        return getVersion(buf, null);
+    }
+
+    /**
+     * source is the file buf was mapped from, or null.
+     */
+    static CDFImpl getVersion(ByteBuffer buf, File source) throws Throwable {
+        int version = compressedVersion(buf);
+        if (version != 0) {
+            return getUncompressed(SpillFile.get(buf, version, source), source);
+        }
         LongBuffer lbuf = buf.asLongBuffer();
         long magic = lbuf.get();
         if (magic == CDF3_MAGIC) {
             return new CDF3Impl(buf);
         }
-        if (magic == CDF3_COMPRESSED_MAGIC) {
-            ByteBuffer mbuf = uncompressed(buf, 3);
-            return new CDF3Impl(mbuf);
-        }
         if (magic == CDF2_MAGIC_DOT5) {
             int release = buf.getInt(24);
             return new CDF2Impl(buf, release);
@@ -71,12 +119,6 @@ public final class CDFFactory {
                         if (sbuf.get() == -1) {
                             return new CDF2Impl(buf, 6);
                         }
-                    } else {
-                        if ((x == (short)0xcccc) && (sbuf.get() == 1)) {
-                            // is compressed - positioned at CCR
-                            ByteBuffer mbuf = uncompressed(buf, 2);
-                            return new CDF2Impl(mbuf, 6);
-                        }
                     }
                         
                 }
@@ -84,6 +126,42 @@ public final class CDFFactory {
         }
         return null;
     }
+    static CDFImpl getVersion(SegmentedBuffer segments, File source)
+        throws Throwable {
+        ByteBuffer header = segments.getSegment(0);
+        if (header.getLong(0) == CDF3_MAGIC) return new CDF3Impl(segments);
+        int version = compressedVersion(header);
+        if (version != 0) {
+            return getUncompressed(SpillFile.get(segments, version, source),
+                source);
+        }
+        throw new Throwable("Files larger than " + segmentThreshold +
+        " bytes are supported only for version 3 CDFs.");
+    }
+
+    /**
+     * returns 3 or 2 if buf holds a version 3 or 2 CDF that is compressed
+     * as a whole, 0 otherwise.
+     */
+    static int compressedVersion(ByteBuffer buf) {
+        if (buf.limit() < 8) return 0;
+        if (buf.getLong(0) == CDF3_COMPRESSED_MAGIC) return 3;
+        if ((buf.getInt(0) == 0xcdf26002) && (buf.getInt(4) == 0xcccc0001)) {
+            return 2;
+        }
+        return 0;
+    }
+
+    /**
+     * returns a CDFImpl for the given spill file. The spill file is
+     * deleted once mapped unless it belongs to a file source.
+     */
+    static CDFImpl getUncompressed(File spill, File source) throws Throwable {
+        CDFImpl cdf = getCDF(spill.getPath(), false);
+        if (source == null) spill.delete();
+        return cdf;
+    }
+
     /**
      * creates  CDFImpl object from a file.
      */
@@ -91,6 +169,16 @@ public final class CDFFactory {
         return getCDF(fname, false);
     }
 
+    /**
+     * returns a CDFImpl for a reader of the given file, shared with other
+     * readers of the file if the reader cache is enabled. The reader
+     * must release it with {@link CDFImpl#release()} exactly once.
+     */
+    static CDFImpl acquireCDF(String fname) throws Throwable {
+        if (ReaderCache.enabled()) return ReaderCache.acquire(fname, false);
+        return getCDF(fname, false);
+    }
+
     static CDFImpl getCDF(final String fname, final boolean option)
         throws Throwable {
         clean();
@@ -98,9 +186,27 @@ public final class CDFFactory {
         final String _fname = file.getPath();
         FileInputStream fis = new FileInputStream(file);
         FileChannel ch = fis.getChannel();
-        ByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
-        fis.close();
-        CDFImpl cdf = getVersion(buf);
+        CDFImpl cdf;
+        ByteBuffer[] buffers;
+        if (ch.size() > segmentThreshold) {
+            SegmentedBuffer segments = new SegmentedBuffer(ch, segmentSize);
+            fis.close();
+            buffers = segments.segments;
+            cdf = getVersion(segments, file);
+        } else {
+            ByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0,
+                ch.size());
+            fis.close();
+            buffers = new ByteBuffer[] {buf};
+            cdf = getVersion(buf, file);
+        }
+        if (cdf.mapping == null) {
+            MappedMemory.register(cdf, buffers, cdf.mappedSize());
+        } else { // mapped spill file replaces the compressed source
+            for (int i = 0; i < buffers.length; i++) {
+                MappedMemory.unmap(buffers[i]);
+            }
+        }
         ((CDFImpl)cdf).setOption(new ProcessingOption() {
             public String missingRecordOption() {
                 if (option) return "accept";
@@ -111,72 +217,90 @@ public final class CDFFactory {
             public String getName() {return _fname;};
             public boolean isFile() {return true;};
         });
-        cdfMap.put(cdf, _fname);
         return cdf;
     }
     /**
      * creates  CDFImpl object from a URL.
+     * The CDF is read on demand using HTTP range requests, if the server
+     * supports them and they have not been disabled by
+     * {@link ReaderFactory#setRangeRequests(boolean)}, and read whole
+     * otherwise.
      */
     public static CDFImpl getCDF(URL url) throws Throwable {
         final String _url = url.toString();
-        URLConnection con = new CDFUrl(url).openConnection();
-        int remaining = con.getContentLength();
-        InputStream is = con.getInputStream();
-        byte [] ba = new byte[remaining];
-        int offset = 0;
-        while (remaining > 0) {
-            int got = is.read(ba, offset, remaining);
-            offset += got;
-            remaining -= got;
-        }
-        CDFImpl cdf = getCDF(ba);
+        CDFImpl cdf = null;
+        if (urlCache != null) {
+            cdf = getCDF(urlCache.getFile(url).getPath(), false);
+        } else {
+            cdf = ReaderFactory.getRemoteVersion(url);
+        }
+        if (cdf == null) {
+            URLConnection con = new CDFUrl(url).openConnection();
+            int remaining = con.getContentLength();
+            InputStream is = con.getInputStream();
+            byte [] ba = new byte[remaining];
+            int offset = 0;
+            while (remaining > 0) {
+                int got = is.read(ba, offset, remaining);
+                offset += got;
+                remaining -= got;
+            }
+            cdf = getCDF(ba);
+        }
         cdf.setSource(new CDFSource() {
             public String getName() {return _url;};
             public boolean isFile() {return false;};
         });
         return cdf;
     }
-    static ByteBuffer uncompressed(ByteBuffer buf, int version) {
-        int DATA_OFFSET = 8 + 20;
-        if (version == 3) DATA_OFFSET = 8 + 32;
-        byte[] ba;
-        int offset;
-        int len = buf.getInt(8) - 20;
-        if (version == 3) len = (int)(buf.getLong(8) - 32);
-        int ulen = buf.getInt(8 + 12);
-        if (version == 3) ulen = (int)(buf.getLong(8 + 20));
-        byte [] udata = new byte[ulen + 8];
-        buf.get(udata, 0, 8); // copy the magic words
-        if (!buf.hasArray()) { // read data into byte array
-            ba = new byte[len];
-            buf.position(DATA_OFFSET);
-            buf.get(ba);
-            offset = 0;
-        } else {
-            ba = buf.array();
-            offset = DATA_OFFSET;
-        }
-        int n = 0;
+
+    /**
+     * creates  CDFImpl object that reads the given channel on demand.
+     * The channel may be any SeekableByteChannel, for example one opened
+     * on an entry of a zip FileSystem, or on an object store.
+     * The CDFImpl takes ownership of the channel, which is closed when
+     * the CDFImpl is closed, or at once if the channel does not hold a
+     * CDF or cannot be read. name is reported as the source.
+     */
+    public static CDFImpl getCDF(SeekableByteChannel ch, final String name)
+        throws Throwable {
+        ChannelReader reader = (ch instanceof FileChannel)?
+            new FileChannelReader((FileChannel)ch):
+            new SeekableChannelReader(ch);
+        CDFImpl cdf = null;
         try {
-            ByteArrayInputStream bais = 
-                new ByteArrayInputStream(ba, offset, len);
-            GZIPInputStream gz = new GZIPInputStream(bais);
-            int toRead = udata.length - 8;
-            int off = 8;
-            while (toRead > 0) {
-                n = gz.read(udata, off, toRead);
-                if (n == -1) break;
-                off += n;
-                toRead -= n;
+            long len = reader.size();
+            if (len > ReaderFactory.preamble) len = ReaderFactory.preamble;
+            ByteBuffer buf = reader.read(0, (int)len);
+            int version = compressedVersion(buf);
+            if (version != 0) {
+                InputStream is;
+                synchronized (ch) {
+                    ch.position(SpillFile.dataOffset(version));
+                    is = Channels.newInputStream(ch);
+                }
+                File spill = SpillFile.get(is, buf, version, null);
+                reader.close();
+                cdf = getUncompressed(spill, null);
+            } else {
+                cdf = ReaderFactory.getVersion(buf, reader);
+            }
+            if (cdf == null) {
+                throw new CDFException.ReaderError(name + " is not a CDF");
+            }
+        } finally {
+            if (cdf == null) {
+                try {
+                    reader.close();
+                } catch (IOException ex) {
+                }
             }
-        } catch (IOException ex) {
-            System.out.println(ex.toString());
-            return null;
         }
-        if (n < 0) return null;
-        return ByteBuffer.wrap(udata);
+        cdf.setSource(new CDFSource() {
+            public String getName() {return name;};
+        });
+        return cdf;
     }
-
     public static class ProcessingOption {
         String missingRecordsOption() {return "reject";}
     }
@@ -188,27 +312,273 @@ public final class CDFFactory {
         public boolean isByteArray() {return false;};
         public boolean isByteBuffer() {return false;};
     }
-    private static long mappedMemoryUsed() {
-        if (cdfMap.size() == 0) return 0;
-        Set set = cdfMap.keySet();
-        Iterator it = set.iterator();
-        long size = 0;
-        while (it.hasNext()) {
-            size += ((CDFImpl)it.next()).getBuffer().limit();
-        }
-        return size;
+    /**
+     * returns number of bytes of files currently mapped.
+     */
+    public static long getMappedMemory() {
+        return MappedMemory.mappedBytes();
     }
+
+    /**
+     * returns number of files currently mapped.
+     */
+    public static int getMappedFileCount() {
+        return MappedMemory.mappings();
+    }
+
+    /**
+     * sets whether closing a CDF unmaps its file as soon as no other
+     * user holds it, rather than leaving the mapping to the garbage
+     * collector. This also lets the reader cache unmap the CDFs it drops.
+     * A buffer obtained from a CDF that has been
+     * unmapped must not be used, and a read from the CDF must not be in
+     * progress when it is closed, since touching unmapped memory crashes
+     * the VM.
+     * Default is false.
+     */
+    public static void setUnmapOnClose(boolean unmap) {
+        unmapOnClose = unmap;
+    }
+
+    /**
+     * sets the number of bytes of files that may stay mapped. When more
+     * are mapped, mappings of closed CDFs, and of CDFs idle in the reader
+     * cache, are unmapped, least recently released first, before another
+     * file is mapped, whether or not unmapping on close is enabled.
+     * Setting a budget therefore means that no buffer obtained from a
+     * closed CDF may be used afterwards. Mappings of CDFs in use are not
+     * unmapped. A budget smaller than one already set is ignored. By
+     * default there is no budget.
+     */
     public static void setMaxMappedMemory(long value) {
         if (maxMappedMemory != null) {
             if (maxMappedMemory.longValue() > value) return;
         }
         maxMappedMemory = new Long(value);
     }
-    public static void clean() {
-        if (maxMappedMemory != null) {
-            if (mappedMemoryUsed() > maxMappedMemory.longValue()) {
-                System.gc();
-            }
+    /**
+     * sets size of the segments used to map files larger than
+     * Integer.MAX_VALUE bytes.
+     */
+    public static void setMappedSegmentSize(long value) {
+        if ((value <= 0) || (value > Integer.MAX_VALUE)) return;
+        segmentSize = value;
+    }
+    /**
+     * sets whether CDFs opened subsequently parse variable descriptors
+     * and attribute entries on first access instead of at open.
+     * Only the names and locations of variables are read at open in
+     * lazy mode.
+     */
+    public static void setLazyMetadata(boolean lazy) {
+        lazyMetadata = lazy;
+    }
+
+    /**
+     * sets the cache used by {@link #getCDF(URL)} and
+     * {@link ReaderFactory#getReader(URL)} to keep local copies of remote
+     * CDFs. Cached copies are memory mapped. null disables the cache,
+     * which is the default.
+     */
+    public static void setURLCache(URLCache cache) {
+        urlCache = cache;
+    }
+
+    /**
+     * sets the directory where CDFs compressed as a whole are inflated
+     * before being memory mapped. Default is cdfj-spill in the system
+     * temporary directory.
+     */
+    public static void setSpillDirectory(File dir) {
+        spillDirectory = dir;
+    }
+
+    /**
+     * sets the number of bytes of spill files kept in the spill
+     * directory. Least recently used spill files are removed when a new
+     * one takes the total above this size. Default is 4 GB.
+     */
+    public static void setSpillCapacity(long size) {
+        spillCapacity = size;
+    }
+
+    /**
+     * sets the time, in milliseconds, for which a file opened by
+     * {@link CDFReader#CDFReader(String)} stays mapped after all its
+     * readers are closed. While cached, the same parsed CDF is shared by all readers
+     * of an unchanged file. 0 disables the cache, which is the default.
+     */
+    public static void setReaderCacheTimeout(long millis) {
+        ReaderCache.setTimeout(millis);
+    }
+
+    /**
+     * returns number of files held in the reader cache.
+     */
+    public static int getCachedReaderCount() {
+        return ReaderCache.size();
+    }
+
+    /**
+     * sets the number of threads used to decompress the blocks of a
+     * compressed variable concurrently when its values are read.
+     * 1 or less decompresses in the reading thread, which is the default.
+     */
+    public static synchronized void setDecompressionThreads(int threads) {
+        ForkJoinPool pool = decompressionPool;
+        decompressionPool = (threads <= 1)?null:new ForkJoinPool(threads);
+        if (pool != null) pool.shutdown();
+    }
+
+    /**
+     * sets the number of threads used to extract the values of a large
+     * range of records of a variable concurrently. The range is split
+     * into ranges that begin at block boundaries, each of which is
+     * extracted into its part of the result. 1 or less extracts in the
+     * reading thread, which is the default.
+     */
+    public static synchronized void setExtractionThreads(int threads) {
+        ForkJoinPool pool = extractionPool;
+        extractionPool = (threads <= 1)?null:new ForkJoinPool(threads);
+        if (pool != null) pool.shutdown();
+    }
+
+    /**
+     * sets the size, in bytes, of the cache of decompressed blocks of
+     * compressed variables. 0 disables the cache, which is the default.
+     * A few blocks per variable read concurrently, 16 MB for instance,
+     * is enough for repeated reads of a block to hit. Without the cache,
+     * GZIP blocks are always inflated whole, and blocks are not
+     * decompressed ahead.
+     */
+    public static void setBlockCache(long size) {
+        blockCache = (size <= 0)?null:new BlockCache(size);
+    }
+
+    /**
+     * returns number of block cache hits since the cache was configured.
+     */
+    public static long getBlockCacheHits() {
+        BlockCache cache = blockCache;
+        if (cache == null) return 0;
+        synchronized (cache) {
+            return cache.hits;
+        }
+    }
+
+    /**
+     * returns number of block cache misses since the cache was configured.
+     */
+    public static long getBlockCacheMisses() {
+        BlockCache cache = blockCache;
+        if (cache == null) return 0;
+        synchronized (cache) {
+            return cache.misses;
+        }
+    }
+
+    /**
+     * returns number of blocks evicted from the block cache since the
+     * cache was configured.
+     */
+    public static long getBlockCacheEvictions() {
+        BlockCache cache = blockCache;
+        if (cache == null) return 0;
+        synchronized (cache) {
+            return cache.evictions;
         }
     }
+
+    /**
+     * returns number of bytes held in the block cache.
+     */
+    public static long getBlockCacheSize() {
+        BlockCache cache = blockCache;
+        if (cache == null) return 0;
+        return cache.size();
+    }
+    /**
+     * sets the number of bytes of direct buffers, released by variable
+     * containers, kept for reuse by later extractions. 0 disables the
+     * pool, so that every extraction allocates its buffer. Default is 0.
+     * A pool pays off when many extractions of similar size are made in
+     * turn, and holds up to capacity bytes of direct memory meanwhile.
+     */
+    public static void setBufferPool(long capacity) {
+        bufferPool = (capacity <= 0)?null:new BufferPool(capacity);
+    }
+
+    /**
+     * returns number of direct buffers allocated by the buffer pool
+     * since the pool was configured.
+     */
+    public static long getBufferPoolAllocations() {
+        BufferPool pool = bufferPool;
+        if (pool == null) return 0;
+        synchronized (pool) {
+            return pool.allocations;
+        }
+    }
+
+    /**
+     * returns number of released buffers reused since the buffer pool
+     * was configured.
+     */
+    public static long getBufferPoolReuses() {
+        BufferPool pool = bufferPool;
+        if (pool == null) return 0;
+        synchronized (pool) {
+            return pool.reuses;
+        }
+    }
+
+    /**
+     * returns number of bytes held in the buffer pool.
+     */
+    public static long getBufferPoolSize() {
+        BufferPool pool = bufferPool;
+        if (pool == null) return 0;
+        return pool.size();
+    }
+
+    /**
+     * sets the number of blocks read ahead, by background threads, of a
+     * variable whose blocks are being read in order. Records of files
+     * read through a channel, local or remote, are held until read, and
+     * pages of mapped files are made resident. If decompress is true,
+     * blocks of compressed variables are also decompressed ahead into the
+     * block cache. 0 disables read ahead, which is the default.
+     */
+    public static void setReadAhead(int blocks, boolean decompress) {
+        Prefetcher.configure(blocks, decompress);
+    }
+
+    /**
+     * returns number of blocks read ahead that were subsequently read.
+     */
+    public static long getReadAheadUseful() {
+        return Prefetcher.getUseful();
+    }
+
+    /**
+     * returns number of blocks read ahead that were dropped without
+     * being read.
+     */
+    public static long getReadAheadWasted() {
+        return Prefetcher.getWasted();
+    }
+
+    /**
+     * unmaps idle mappings, least recently released first, until the
+     * mapped memory is within the limit set by setMaxMappedMemory.
+     * Mappings in use are not affected. If the limit is still exceeded,
+     * a garbage collection is requested, so that mappings of CDFs that
+     * were dropped without being closed are released.
+     */
+    public static void clean() {
+        if (maxMappedMemory == null) return;
+        long budget = maxMappedMemory.longValue();
+        MappedMemory.evict(budget);
+        if (MappedMemory.mappedBytes() > budget) System.gc();
+    }
 }
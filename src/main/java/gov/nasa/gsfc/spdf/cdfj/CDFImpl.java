@@ -3,6 +3,7 @@ import java.io.*;
 import java.nio.*;
 import java.util.*;
 import java.lang.reflect.*;
+import java.util.concurrent.*;
 import java.util.zip.*;
 /*public*/ abstract class CDFImpl implements java.io.Serializable {
     /**
@@ -34,6 +35,7 @@ import java.util.zip.*;
     int offset_NUM;
     int offset_FLAGS;
     int offset_sRecords;
+    int offset_CPR;
     int offset_BLOCKING_FACTOR;
     int offset_VAR_DATATYPE;
     int offset_zNumDims;
@@ -70,9 +72,24 @@ import java.util.zip.*;
     int lastLeapSecondId;
 
     transient ByteBuffer buf;
+    transient SegmentedBuffer segments;
+    transient ChannelReader reader;
+    transient MappedMemory.Entry mapping;
+    transient String cacheKey;
+    volatile boolean closed;
+    final long blockCacheId = BlockCache.nextId();
     protected String[] varNames;
     protected Hashtable variableTable;
     Hashtable attributeTable;
+    /**
+     * Lazy metadata: VDR locations by name, attributes in ADR order, and
+     * AEDR locations by variable. Descriptors and entries are parsed
+     * on first access.
+     */
+    final boolean lazy = CDFFactory.lazyMetadata;
+    Hashtable variableIndex;
+    Vector attributeList;
+    Hashtable entryIndex;
     protected CDFCore thisCDF;
     protected CDFFactory.CDFSource source;
     protected CDFFactory.ProcessingOption processingOption;
@@ -81,7 +98,16 @@ import java.util.zip.*;
         this.buf = buf;
     }
 
+    protected CDFImpl(ByteBuffer buf, SegmentedBuffer segments) {
+        this.buf = buf;
+        this.segments = segments;
+    }
+
     protected ByteBuffer getRecord(long offset)  {
+        if (segments != null) {
+            long size = longInt(segments.slice(offset, 8));
+            return segments.slice(offset, (int)size);
+        }
         ByteBuffer _buf = buf.duplicate();
         _buf.position((int)offset);
         return _buf.slice();
@@ -104,10 +130,11 @@ import java.util.zip.*;
      */
     protected Hashtable variables()  {
         if (variableTable != null) return variableTable;
-        int [] offsets = new int[] {(int)zVDRHead, (int)rVDRHead};
+        long [] offsets = new long[] {zVDRHead, rVDRHead};
         String [] vtypes = {"z", "r"};
         Hashtable table = new Hashtable();
         Vector v = new Vector();
+        if (lazy) variableIndex = new Hashtable();
         for (int vtype = 0; vtype < 2; vtype++) {
             long offset = offsets[vtype];
             if (offset == 0) continue;
@@ -116,10 +143,17 @@ import java.util.zip.*;
                 _buf.position(offset_NEXT_VDR);
                 //int next = lowOrderInt(_buf);
                 long next = longInt(_buf);
-                CDFVariable cdfv = new CDFVariable(offset, vtypes[vtype]);
-                String name = cdfv.getName();
+                String name;
+                if (lazy) {
+                    name = getString(offset + offset_VAR_NAME);
+                    variableIndex.put(name, new VDRLocation(offset,
+                        vtypes[vtype], _buf.getInt(offset_NUM)));
+                } else {
+                    CDFVariable cdfv = new CDFVariable(offset, vtypes[vtype]);
+                    name = cdfv.getName();
+                    table.put(name, cdfv);
+                }
                 v.add(name);
-                table.put(name, cdfv);
                 if (next == 0) break;
                 offset = next;
                 _buf = getRecord(offset);
@@ -149,7 +183,103 @@ import java.util.zip.*;
      * the named variable
      */
     public Variable getVariable(String name) {
-        return (Variable)variableTable.get(name);
+        return (Variable)variable(name);
+    }
+
+    /**
+     * returns the CDFVariable for the named variable, parsing its VDR
+     * if this is the first access in lazy mode.
+     */
+    CDFVariable variable(String name) {
+        CDFVariable var = (CDFVariable)variableTable.get(name);
+        if ((var != null) || (variableIndex == null)) return var;
+        VDRLocation loc = (VDRLocation)variableIndex.get(name);
+        if (loc == null) return null;
+        synchronized (variableTable) {
+            var = (CDFVariable)variableTable.get(name);
+            if (var == null) {
+                var = new CDFVariable(loc.offset, loc.vtype);
+                variableTable.put(name, var);
+            }
+        }
+        return var;
+    }
+
+    /**
+     * returns attribute entries linked to the given variable. In lazy
+     * mode, the entries are decoded on first access.
+     */
+    Vector linkedEntries(CDFVariable var) {
+        if (!lazy) return var.attributes;
+        synchronized (var) {
+            if (!var.linked) {
+                Vector v = (Vector)entryIndex().get(var.vtype + var.number);
+                if (v != null) {
+                    for (int i = 0; i < v.size(); i++) {
+                        AEDRLocation loc = (AEDRLocation)v.elementAt(i);
+                        var.attributes.add(new CDFAttributeEntry(
+                            getRecord(loc.offset), loc.attribute));
+                    }
+                }
+                var.linked = true;
+            }
+        }
+        return var.attributes;
+    }
+
+    /**
+     * returns map of variable to locations of its attribute entries,
+     * reading only the entry number of each AEDR.
+     */
+    synchronized Hashtable entryIndex() {
+        if (entryIndex != null) return entryIndex;
+        Hashtable index = new Hashtable();
+        attributes();
+        if (attributeList != null) {
+            for (int i = 0; i < attributeList.size(); i++) {
+                CDFAttribute a = (CDFAttribute)attributeList.elementAt(i);
+                if (!a.isGlobal()) indexEntries(index, a, a.gHead, "r");
+                indexEntries(index, a, a.zHead, "z");
+            }
+        }
+        entryIndex = index;
+        return index;
+    }
+
+    void indexEntries(Hashtable index, CDFAttribute a, long offset,
+        String vtype) {
+        while (offset != 0) {
+            ByteBuffer _buf = getRecord(offset);
+            String key = vtype + _buf.getInt(offset_ENTRYNUM);
+            Vector v = (Vector)index.get(key);
+            if (v == null) {
+                v = new Vector();
+                index.put(key, v);
+            }
+            v.add(new AEDRLocation(offset, a.name));
+            _buf.position(offset_NEXT_AEDR);
+            offset = longInt(_buf);
+        }
+    }
+
+    static class VDRLocation {
+        final long offset;
+        final String vtype;
+        final int number;
+        VDRLocation(long offset, String vtype, int number) {
+            this.offset = offset;
+            this.vtype = vtype;
+            this.number = number;
+        }
+    }
+
+    static class AEDRLocation {
+        final long offset;
+        final String attribute;
+        AEDRLocation(long offset, String attribute) {
+            this.offset = offset;
+            this.attribute = attribute;
+        }
     }
 
     /**
@@ -176,11 +306,12 @@ import java.util.zip.*;
      */
     public String [] globalAttributeNames() {
         Vector vec = new Vector();
-        if (attributeTable == null) return new String[0];
-        Set set = attributeTable.keySet();
+        Hashtable table = attributes();
+        if (table == null) return new String[0];
+        Set set = table.keySet();
         Iterator iter = set.iterator();
         while (iter.hasNext()) {
-            CDFAttribute attr = (CDFAttribute)attributeTable.get(iter.next());
+            CDFAttribute attr = (CDFAttribute)table.get(iter.next());
             if (attr.isGlobal()) {
                 vec.add(attr.name);
             }
@@ -196,11 +327,12 @@ import java.util.zip.*;
      * returns names of variable attributes in a String[]
      */
     public String [] variableAttributeNames(String name) {
-        CDFVariable var = (CDFVariable)variableTable.get(name);
+        CDFVariable var = variable(name);
         if (var == null) return null;
-        String [] sa = new String [var.attributes.size()];
+        Vector attrs = linkedEntries(var);
+        String [] sa = new String [attrs.size()];
         for (int i = 0; i < sa.length; i++) {
-            AttributeEntry ae = (AttributeEntry)var.attributes.elementAt(i);
+            AttributeEntry ae = (AttributeEntry)attrs.elementAt(i);
             sa[i] = ae.getAttributeName();
         }
         return sa;
@@ -210,16 +342,18 @@ import java.util.zip.*;
      * returns value of the named global attribute
      */
     public Object getAttribute(String atr) {
-        if (attributeTable == null) return null;
-        CDFAttribute a = (CDFAttribute)attributeTable.get(atr);
+        Hashtable table = attributes();
+        if (table == null) return null;
+        CDFAttribute a = (CDFAttribute)table.get(atr);
         if (a == null) return null;
         if (!a.isGlobal()) return null;
-        if (a.gEntries.size() == 0) return null;
-        AttributeEntry ae = (AttributeEntry)a.gEntries.elementAt(0);
+        Vector gEntries = a.globalEntries();
+        if (gEntries.size() == 0) return null;
+        AttributeEntry ae = (AttributeEntry)gEntries.elementAt(0);
         if (ae.isStringType()) {
-            String [] sa = new String[a.gEntries.size()];
-            for (int i = 0; i < a.gEntries.size(); i++) {
-                ae = (AttributeEntry)a.gEntries.elementAt(i);
+            String [] sa = new String[gEntries.size()];
+            for (int i = 0; i < gEntries.size(); i++) {
+                ae = (AttributeEntry)gEntries.elementAt(i);
                 sa[i] = (String)ae.getValue();
             }
             return sa;
@@ -232,36 +366,38 @@ import java.util.zip.*;
      * object.
      */
     public GlobalAttribute getGlobalAttribute(String atr) throws Throwable {
-        if (attributeTable == null) throw new Throwable("No attribute named " + atr);
-        final CDFAttribute a = (CDFAttribute)attributeTable.get(atr);
+        Hashtable table = attributes();
+        if (table == null) throw new Throwable("No attribute named " + atr);
+        final CDFAttribute a = (CDFAttribute)table.get(atr);
         if (a == null) throw new Throwable("No attribute named " + atr);
         if (!a.isGlobal()) throw new Throwable("No global attribute named " +
         atr);
+        final Vector gEntries = a.globalEntries();
         return new GlobalAttribute() {
             public String getName() {return a.getName();}
             public boolean isGlobal() {return true;}
             public int getNum() {return a.num;}
             public int getEntryCount() {
-                return a.gEntries.size();
+                return gEntries.size();
             }
             public Object getEntry(int n) {
-                if (n > a.gEntries.size()) return null;
+                if (n > gEntries.size()) return null;
                 if (n < 0) return null;
-                AttributeEntry ae = (AttributeEntry)a.gEntries.elementAt(n);
+                AttributeEntry ae = (AttributeEntry)gEntries.elementAt(n);
                 return ae.getValue();
             }
             public boolean isStringType(int n) throws Throwable {
-                if ((n < 0) || (n > a.gEntries.size())) {
+                if ((n < 0) || (n > gEntries.size())) {
                     throw new Throwable("Invalid attribute index");
                 }
-                AttributeEntry ae = (AttributeEntry)a.gEntries.elementAt(n);
+                AttributeEntry ae = (AttributeEntry)gEntries.elementAt(n);
                 return ae.isStringType();
             }
             public boolean isLongType(int n) throws Throwable {
-                if ((n < 0) || (n > a.gEntries.size())) {
+                if ((n < 0) || (n > gEntries.size())) {
                     throw new Throwable("Invalid attribute index");
                 }
-                AttributeEntry ae = (AttributeEntry)a.gEntries.elementAt(n);
+                AttributeEntry ae = (AttributeEntry)gEntries.elementAt(n);
                 return ae.isLongType();
             }
         };
@@ -270,9 +406,9 @@ import java.util.zip.*;
      * returns value of the named attribute for the named variable
      */
     public Object getAttribute(String var, String atr) {
-        CDFVariable c = (CDFVariable)variableTable.get(var);
+        CDFVariable c = variable(var);
         if (c == null) return null;
-        Vector attrs = c.attributes;
+        Vector attrs = linkedEntries(c);
         Vector values = new Vector();
         for (int i = 0; i < attrs.size(); i++) {
             AttributeEntry ae = (AttributeEntry)attrs.elementAt(i);
@@ -287,12 +423,13 @@ import java.util.zip.*;
      * returns list of AttributeEntry objects for the named global attribute.
      */
     public Vector getAttributeEntries(String atr) throws Throwable {
-        if (attributeTable == null) throw new Throwable("No attribute named " + atr);
-        final CDFAttribute a = (CDFAttribute)attributeTable.get(atr);
+        Hashtable table = attributes();
+        if (table == null) throw new Throwable("No attribute named " + atr);
+        final CDFAttribute a = (CDFAttribute)table.get(atr);
         if (a == null) throw new Throwable("No attribute named " + atr);
         if (!a.isGlobal()) throw new Throwable("No global attribute named " +
         atr);
-        return a.gEntries;
+        return a.globalEntries();
     }
 
     /**
@@ -300,9 +437,9 @@ import java.util.zip.*;
      * for the named variable.
      */
     public Vector getAttributeEntries(String var, String atr) {
-        CDFVariable c = (CDFVariable)variableTable.get(var);
+        CDFVariable c = variable(var);
         if (c == null) return null;
-        Vector attrs = c.attributes;
+        Vector attrs = linkedEntries(c);
         Vector entries = new Vector();
         for (int i = 0; i < attrs.size(); i++) {
             AttributeEntry ae = (AttributeEntry)attrs.elementAt(i);
@@ -329,16 +466,18 @@ import java.util.zip.*;
     /**
      * returns name to Attribute object map
      */
-    Hashtable attributes()  {
+    synchronized Hashtable attributes()  {
         if (attributeTable != null) return attributeTable;
         long offset = ADRHead;
         if (offset == 0) return null;
         Hashtable table = new Hashtable();
+        Vector list = new Vector();
         ByteBuffer _buf = getRecord(offset);
         while (true) {
             _buf.position(offset_NEXT_ADR);
             long next = longInt(_buf);
             CDFAttribute cdfa = new CDFAttribute(offset);
+            list.add(cdfa);
             Object o;
             if ((o = table.put(cdfa.getName(), cdfa)) != null) {
                 System.out.println("possibly duplicate attribute " +
@@ -348,6 +487,7 @@ import java.util.zip.*;
             offset = next;
             _buf = getRecord(offset);
         }
+        attributeList = list;
         attributeTable = table;
         return table;
     }
@@ -360,6 +500,8 @@ import java.util.zip.*;
         int num;
         Vector zEntries = new Vector();
         Vector gEntries = new Vector();
+        long gHead;
+        long zHead;
         public CDFAttribute(long offset)  {
             name = getString(offset + offset_ATTR_NAME);
             ByteBuffer _buf = getRecord(offset);
@@ -367,15 +509,22 @@ import java.util.zip.*;
             scope = _buf.getInt();
             num = _buf.getInt();
             _buf.position(offset_AgrEDRHead);
-            long n = longInt(_buf);
+            gHead = longInt(_buf);
+            _buf.position(offset_AzEDRHead);
+            zHead = longInt(_buf);
+            if (lazy) {
+                gEntries = null;
+                zEntries = null;
+                return;
+            }
+            long n = gHead;
             if (n > 0) {
                 gEntries = getAttributeEntries(n);
                 if ((scope == 2) || (scope == 4)) { // variable scope
                     linkToVariables(gEntries, "r");
                 }
             }
-            _buf.position(offset_AzEDRHead);
-            n = longInt(_buf);
+            n = zHead;
             if (n > 0) {
                 zEntries = getAttributeEntries(n);
                 linkToVariables(zEntries, "z");
@@ -387,6 +536,16 @@ import java.util.zip.*;
          */
         public String getName() {return name;}
 
+        /**
+         * returns entries of a global attribute
+         */
+        synchronized Vector globalEntries() {
+            if (gEntries == null) {
+                gEntries = (gHead > 0)?getAttributeEntries(gHead):new Vector();
+            }
+            return gEntries;
+        }
+
         /**
          * returns attribute entries
          */
@@ -544,7 +703,9 @@ import java.util.zip.*;
         transient ByteBuffer _buf;
         int dataItemSize;
         int blockingFactor;
+        int compressionType = -1;
         DataLocator locator;
+        boolean linked;
         public CDFVariable(long offset, String vtype) {
             this.offset = offset;
             this.vtype = vtype;
@@ -834,6 +995,25 @@ import java.util.zip.*;
          */
         public int getBlockingFactor() {return blockingFactor;}
 
+        /**
+         * returns compression type from the CPR of this variable, or 0
+         * if this variable is not compressed.
+         */
+        public int getCompressionType() {
+            if (compressionType < 0) {
+                int ctype = 0;
+                if ((flags & 4) != 0) {
+                    ByteBuffer vdr = getRecord(offset);
+                    vdr.position(offset_CPR);
+                    long cpr = longInt(vdr);
+                    ctype = (cpr <= 0)?BlockDecoder.GZIP:
+                        getRecord(cpr).getInt(offset_RECORD_TYPE + 4);
+                }
+                compressionType = ctype;
+            }
+            return compressionType;
+        }
+
         /**
          * returns effective rank
          */
@@ -1040,7 +1220,11 @@ import java.util.zip.*;
             if (ByteVarContainer.isCompatible(type, true)) {
                 container = new ByteVarContainer(CDFImpl.this, this, pt); 
                 container.run();
-                return container.as1DArray();
+                try {
+                    return container.as1DArray();
+                } finally {
+                    container.release();
+                }
             }
             throw new Throwable("Variable " + getName() + " cannot return " +
             "byte[].");
@@ -1060,7 +1244,11 @@ import java.util.zip.*;
             if (ByteVarContainer.isCompatible(type, true)) {
                 container = new ByteVarContainer(CDFImpl.this, this, pt); 
                 container.run();
-                return container.asOneDArray(columnMajor);
+                try {
+                    return container.asOneDArray(columnMajor);
+                } finally {
+                    container.release();
+                }
             }
             throw new Throwable("Variable " + getName() + " cannot return " +
             "byte[].");
@@ -1110,7 +1298,11 @@ import java.util.zip.*;
                 " cannot return " + "float[]."); 
             }
             container.run();
-            return container.as1DArray();
+            try {
+                return container.as1DArray();
+            } finally {
+                container.release();
+            }
         }
 
         /**
@@ -1130,6 +1322,26 @@ import java.util.zip.*;
             return asFloatArray(false, pt);
         }
 
+        /**
+         * Decodes this variable's values for the specified range of records
+         * into array, starting at offset, and returns the number of values
+         * decoded.
+         * If variable type cannot be cast to float, or array is too small,
+         * a Throwable is thrown.
+         */
+        public int asFloatArray(int[] pt, float[] array, int offset)
+            throws Throwable {
+            VDataContainer.CFloat container;
+            try {
+                container = getFloatContainer(pt, false,
+                    ByteOrder.nativeOrder());
+            } catch (Throwable th) {
+                throw new Throwable("Variable " + getName() +
+                " cannot return " + "float[]."); 
+            }
+            return container.asOneDArray(!rowMajority(), array, offset);
+        }
+
         public VDataContainer.CDouble getDoubleContainer(int[] pt,
             boolean preserve, ByteOrder bo) throws Throwable {
             VDataContainer.CDouble container;
@@ -1169,7 +1381,11 @@ import java.util.zip.*;
                 " cannot return " + "double[]."); 
             }
             container.run();
-            return container.asOneDArray(tattr.columnMajor);
+            try {
+                return container.asOneDArray(tattr.columnMajor);
+            } finally {
+                container.release();
+            }
         }
 
         /**
@@ -1189,6 +1405,26 @@ import java.util.zip.*;
             return asDoubleArray(false, pt);
         }
 
+        /**
+         * Decodes this variable's values for the specified range of records
+         * into array, starting at offset, and returns the number of values
+         * decoded.
+         * If variable type cannot be cast to double, or array is too small,
+         * a Throwable is thrown.
+         */
+        public int asDoubleArray(int[] pt, double[] array, int offset)
+            throws Throwable {
+            VDataContainer.CDouble container;
+            try {
+                container = getDoubleContainer(pt, false,
+                    ByteOrder.nativeOrder());
+            } catch (Throwable th) {
+                throw new Throwable("Variable " + getName() +
+                " cannot return " + "double[]."); 
+            }
+            return container.asOneDArray(false, array, offset);
+        }
+
         public VDataContainer.CLong getLongContainer(int[] pt,
             ByteOrder bo) throws Throwable {
             VDataContainer.CLong container;
@@ -1214,7 +1450,11 @@ import java.util.zip.*;
                 " cannot return " + "long[]."); 
             }
             container.run();
-            return container.as1DArray();
+            try {
+                return container.as1DArray();
+            } finally {
+                container.release();
+            }
         }
 
         /**
@@ -1234,6 +1474,25 @@ import java.util.zip.*;
             return asLongArray(false, pt);
         }
 
+        /**
+         * Decodes this variable's values for the specified range of records
+         * into array, starting at offset, and returns the number of values
+         * decoded, for variables of type long.
+         * throws Throwable for variables of other types, or if array is too
+         * small.
+         */
+        public int asLongArray(int[] pt, long[] array, int offset)
+            throws Throwable {
+            VDataContainer.CLong container;
+            try {
+                container = getLongContainer(pt, ByteOrder.nativeOrder());
+            } catch (Throwable th) {
+                throw new Throwable("Variable " + getName() +
+                " cannot return " + "long[]."); 
+            }
+            return container.asOneDArray(!rowMajority(), array, offset);
+        }
+
         public VDataContainer.CInt getIntContainer(int[] pt,
             boolean preserve, ByteOrder bo) throws Throwable {
             VDataContainer.CInt container;
@@ -1266,7 +1525,11 @@ import java.util.zip.*;
                 " cannot return " + "int[]."); 
             }
             container.run();
-            return container.as1DArray();
+            try {
+                return container.as1DArray();
+            } finally {
+                container.release();
+            }
         }
 
         /**
@@ -1321,7 +1584,11 @@ import java.util.zip.*;
                 " cannot return " + "short[]."); 
             }
             container.run();
-            return container.as1DArray();
+            try {
+                return container.as1DArray();
+            } finally {
+                container.release();
+            }
         }
 
         /**
@@ -1479,17 +1746,76 @@ import java.util.zip.*;
      * CDF offset value offset.
      */
     ByteBuffer positionBuffer(Variable var, long offset, int count) {
-        ByteBuffer bv;
+        return positionBuffer(var, offset, count, count);
+    }
+
+    /**
+     * returns ByteBuffer containing at least the first needed of count
+     * values for variable var starting at CDF offset value offset.
+     */
+    ByteBuffer positionBuffer(Variable var, long offset, int count,
+        int needed) {
+        ByteBuffer bv = Prefetcher.take(this, offset);
         if (!var.isCompressed()) {
-            bv = getValueBuffer(offset);
+            if (bv == null) {
+                bv = getValueBuffer(offset);
+            } else {
+                bv.position(offset_RECORDS);
+            }
         } else {
             int size = var.getDataItemSize();
-            bv = getValueBuffer(offset, size , count);
+            bv = getValueBuffer(bv, offset, size , count,
+                var.getCompressionType(), needed);
         }
         bv.order(getByteOrder());
         return bv;
     }
 
+    /**
+     * returns ByteBuffers for blocks from through to of the locations of
+     * var, decompressing them concurrently in pool.
+     */
+    ByteBuffer[] positionBuffers(final Variable var, Vector locations,
+        int from, int to, ForkJoinPool pool) {
+        Vector<Callable<ByteBuffer>> tasks = new Vector<Callable<ByteBuffer>>();
+        for (int blk = from; blk <= to; blk++) {
+            final long [] loc = (long [])locations.elementAt(blk);
+            tasks.add(new Callable<ByteBuffer>() {
+                public ByteBuffer call() {
+                    return positionBuffer(var, loc[2], (int)(loc[1] - loc[0] + 1));
+                }
+            });
+        }
+        ByteBuffer[] buffers = new ByteBuffer[tasks.size()];
+        List<Future<ByteBuffer>> results;
+        try {
+            results = pool.invokeAll(tasks);
+        } catch (RejectedExecutionException ex) { // pool has been replaced
+            for (int i = 0; i < buffers.length; i++) {
+                long [] loc = (long [])locations.elementAt(from + i);
+                buffers[i] = positionBuffer(var, loc[2],
+                    (int)(loc[1] - loc[0] + 1));
+            }
+            return buffers;
+        }
+        for (int i = 0; i < buffers.length; i++) {
+            try {
+                buffers[i] = results.get(i).get();
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException)cause;
+                }
+                if (cause instanceof Error) throw (Error)cause;
+                throw new RuntimeException(cause);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(ex);
+            }
+        }
+        return buffers;
+    }
+
     public ByteBuffer getValueBuffer(long offset) {
         ByteBuffer bv = getRecord(offset);
         bv.position(offset_RECORDS);
@@ -1497,7 +1823,53 @@ import java.util.zip.*;
     }
 
     public ByteBuffer getValueBuffer(long offset, int size, int number) {
-        ByteBuffer bv = getRecord(offset);
+        return getValueBuffer(offset, size, number, BlockDecoder.GZIP);
+    }
+
+    /**
+     * returns ByteBuffer containing number values of the given size from
+     * the record at offset, decoding it according to the compression type
+     * ctype if it is compressed.
+     */
+    public ByteBuffer getValueBuffer(long offset, int size, int number,
+        int ctype) {
+        return getValueBuffer(offset, size, number, ctype, number);
+    }
+
+    /**
+     * returns ByteBuffer containing at least the first needed of number
+     * values of the given size from the record at offset. A GZIP record
+     * is inflated only as far as needed. If the block cache is enabled,
+     * the partly inflated record is cached, so that later calls for more
+     * of its values resume inflating where this one stopped.
+     */
+    ByteBuffer getValueBuffer(long offset, int size, int number, int ctype,
+        int needed) {
+        return getValueBuffer(null, offset, size, number, ctype, needed);
+    }
+
+    /**
+     * as getValueBuffer(offset, size, number, ctype, needed), for the
+     * record at offset, which is read if bv is null and not in the
+     * block cache.
+     */
+    ByteBuffer getValueBuffer(ByteBuffer bv, long offset, int size,
+        int number, int ctype, int needed) {
+        int length = size*number;
+        BlockCache cache = CDFFactory.blockCache;
+        boolean hit = false;
+        if (cache != null) { // only compressed records are cached
+            BlockCache.Block block = cache.get(blockCacheId, offset, length);
+            hit = (block != null);
+            if (block != null) {
+                try {
+                    ByteBuffer view = block.view(size*needed);
+                    if (view != null) return view;
+                } catch (IOException ex) { // decoded again below
+                }
+            }
+        }
+        if (bv == null) bv = getRecord(offset);
         if (bv.getInt(offset_RECORD_TYPE) == VVR_RECORD_TYPE) {
 /*
             System.out.println("Encountered uncompressed instead of " +
@@ -1506,36 +1878,59 @@ import java.util.zip.*;
             bv.position(offset_RECORDS);
             return bv;
         }
-        int clen = lowOrderInt(bv, offset_CSIZE);
-        byte [] work = new byte[clen];
-        bv.position(offset_CDATA);
-        bv.get(work);
-        byte [] udata = new byte[size*number];
-        int n = 0;
+        if ((cache != null) && !hit) cache.miss();
         try {
-            GZIPInputStream gz =
-                new GZIPInputStream(new ByteArrayInputStream(work));
-            int toRead = udata.length;
-            int off = 0;
-            while (toRead > 0) {
-                n = gz.read(udata, off, toRead);
-                if (n == -1) break;
-                off += n;
-                toRead -= n;
+            int clen = lowOrderInt(bv, offset_CSIZE);
+            bv.position(offset_CDATA);
+            if ((offset_CDATA + clen) < bv.limit()) {
+                bv.limit(offset_CDATA + clen);
+            }
+            if ((cache == null) && (ctype == BlockDecoder.GZIP) &&
+                (needed < number)) {
+                byte [] udata = new byte[size*needed];
+                int n = BlockInflater.inflate(bv, udata);
+                if (n < udata.length) throw shortBlock(offset, udata.length, n);
+                return ByteBuffer.wrap(udata);
             }
+            if ((cache != null) && (ctype == BlockDecoder.GZIP) &&
+                (needed < number)) {
+                BlockCache.Block block = BlockInflater.start(bv, length);
+                ByteBuffer view = block.view(size*needed);
+                if (view == null) {
+                    throw shortBlock(offset, size*needed, block.produced);
+                }
+                cache.put(blockCacheId, offset, block);
+                return view;
+            }
+            byte [] udata = new byte[length];
+            int n = BlockDecoder.decode(ctype, bv, udata);
+            if (n < length) throw shortBlock(offset, length, n);
+            if (cache == null) return ByteBuffer.wrap(udata);
+            BlockCache.Block block = new BlockCache.Block(udata, n);
+            cache.put(blockCacheId, offset, block);
+            return block.view(length);
         } catch (IOException ex) {
             System.out.println(ex.toString() + " at offset " + offset);
             System.out.println("Trying to get data as uncompressed");
             return getValueBuffer(offset);
         }
-        if (n < 0) return null;
-        return ByteBuffer.wrap(udata);
     }
+
+    /**
+     * returns the exception reported when the compressed record at offset
+     * decodes to fewer bytes than expected.
+     */
+    UncheckedIOException shortBlock(long offset, int expected, int actual) {
+        String msg = "Compressed record at offset " + offset +
+            " decodes to " + actual + " bytes. Expected " + expected;
+        return new UncheckedIOException(msg, new EOFException(msg));
+    }
+
     /**
      * returns dimensions of the named variable.
      */
     public int [] variableDimensions(String name) {
-        Variable var = (Variable)variableTable.get(name);
+        Variable var = variable(name);
         if (var == null) return null;
         int [] dims = var.getDimensions();
         int [] ia = new int[dims.length];
@@ -1552,6 +1947,7 @@ import java.util.zip.*;
     protected abstract String getString(long offset);
 
     protected String getString(long offset, int max)  {
+        if (segments != null) return getString(segments.slice(offset, max), max);
         return getString(getRecord(offset), max);
     }
 
@@ -1573,7 +1969,7 @@ import java.util.zip.*;
         if (type == DataTypes.EPOCH16) ne = 2*nelement;
         long[] lvalue = null;
         double[] value = null;
-        long longInt = DataTypes.longInt[type];
+        DecodeKernel kernel = DecodeKernel.get(type);
         boolean longType = false;
         try {
             if ((type > 20) || (type < 10)) {
@@ -1584,20 +1980,13 @@ import java.util.zip.*;
                     value = new double[ne];
                 }
                 for (int i = 0; i < ne; i++) {
-                    Number num =
-                        (Number)DataTypes.method[type].invoke(vbufLocal,
-                        new Object [] {});
-                    if (!longType) value[i] = num.doubleValue();
-                    if (longType) lvalue[i] = num.longValue();
+                    if (!longType) value[i] = kernel.getDouble(vbufLocal);
+                    if (longType) lvalue[i] = kernel.getLong(vbufLocal);
                 }
             } else {
                 value = new double[ne];
                 for (int i = 0; i < nelement; i++) {
-                    Number num =
-                        (Number)DataTypes.method[type].invoke(vbufLocal,
-                        new Object [] {});
-                    int n = num.intValue();
-                    value[i] = (n >= 0)?(double)n:(double)(longInt + n);
+                    value[i] = kernel.getDouble(vbufLocal);
                 }
             }
         } catch(Exception ex) {
@@ -1624,7 +2013,76 @@ import java.util.zip.*;
     protected void setBuffer(ByteBuffer b) {buf = b;}
     protected ByteBuffer getBuffer() {return buf;}
 
+    /**
+     * releases the resources held by this object. If unmapping on close
+     * has been enabled by {@link CDFFactory#setUnmapOnClose(boolean)},
+     * mapped memory is unmapped once no other user holds this object,
+     * and neither this object nor any buffer obtained from it may be used
+     * afterwards. Otherwise the mapping is left to the garbage collector,
+     * or to {@link CDFFactory#clean()}.
+     * An object shared by readers through the reader cache is released
+     * by those readers as they are closed, and is not affected by this
+     * method.
+     */
+    public void close() {
+        if (closed || (cacheKey != null)) return;
+        boolean unmap = CDFFactory.unmapOnClose;
+        MappedMemory.release(this, unmap);
+        if ((mapping == null) || !unmap) dispose();
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (IOException ex) {
+                System.out.println(ex.toString());
+            }
+        }
+    }
+
+    /**
+     * releases the reference of one reader to this object, which is
+     * closed if it is not shared through the reader cache.
+     */
+    void release() {
+        if (cacheKey != null) {
+            ReaderCache.release(this);
+            return;
+        }
+        close();
+    }
+
+    /**
+     * called when the mapped memory of this object has been unmapped.
+     */
+    void unmapped() {
+        dispose();
+        buf = null;
+        segments = null;
+    }
+
+    /**
+     * marks this object closed, and drops its cached and prefetched
+     * blocks.
+     */
+    void dispose() {
+        closed = true;
+        BlockCache cache = CDFFactory.blockCache;
+        if (cache != null) cache.remove(blockCacheId);
+        Prefetcher.remove(this);
+    }
+
+    /**
+     * returns number of bytes of the source mapped by this object
+     */
+    long mappedSize() {
+        if (segments != null) return segments.size();
+        return buf.limit();
+    }
+
     public void extractBytes(int bufOffset, byte[] ba, int offset, int len) {
+        if (segments != null) {
+            segments.slice(bufOffset, len).get(ba, offset, len);
+            return;
+        }
         ((ByteBuffer)buf.duplicate().position(bufOffset)).get(ba, offset, len);
     }
 
@@ -1723,13 +2181,21 @@ import java.util.zip.*;
         if (DataTypes.isStringType(var.getType())) {
             VDataContainer.CString container = var.getStringContainer(null);
             container.run();
-            StringArray sa = (StringArray)container.asArray();
-            return sa.array();
+            try {
+                StringArray sa = (StringArray)container.asArray();
+                return sa.array();
+            } finally {
+                container.release();
+            }
         }
         VDataContainer.CDouble container = var.getDoubleContainer(null, false);
         container.run();
-        DoubleArray da = (DoubleArray)container.asArray();
-        return da.array();
+        try {
+            DoubleArray da = (DoubleArray)container.asArray();
+            return da.array();
+        } finally {
+            container.release();
+        }
     }
 
     public Object getLong(String varName) throws Throwable {
@@ -1741,8 +2207,12 @@ import java.util.zip.*;
         }
         VDataContainer.CLong container = var.getLongContainer(null);
         container.run();
-        LongArray la = (LongArray)container.asArray();
-        return la.array();
+        try {
+            LongArray la = (LongArray)container.asArray();
+            return la.array();
+        } finally {
+            container.release();
+        }
     }
 
     public Object get(String varName, int element) throws Throwable {
@@ -1759,7 +2229,11 @@ import java.util.zip.*;
         dbuf = new DoubleVarContainer(this, var, null, false, 
             ByteOrder.nativeOrder());
         dbuf.run();
-        return dbuf.asArrayElement(elements);
+        try {
+            return dbuf.asArrayElement(elements);
+        } finally {
+            dbuf.release();
+        }
     }
 
     public Object get(String varName, int index0, int index1) throws Throwable {
@@ -1772,7 +2246,11 @@ import java.util.zip.*;
         dbuf = new DoubleVarContainer(this, var, null, false, 
             ByteOrder.nativeOrder());
         dbuf.run();
-        return dbuf.asArrayElement(index0, index1);
+        try {
+            return dbuf.asArrayElement(index0, index1);
+        } finally {
+            dbuf.release();
+        }
     }
 
     public Object get(String varName, int first, int last, int element) throws
@@ -1783,7 +2261,11 @@ import java.util.zip.*;
     public Object get(String varName, int first, int last, int[] elements)
        throws Throwable {
         DoubleVarContainer dbuf = getRangeBuffer(varName, first, last);
-        return dbuf.asArrayElement(elements);
+        try {
+            return dbuf.asArrayElement(elements);
+        } finally {
+            dbuf.release();
+        }
     }
 
     // --- POINT
@@ -1793,14 +2275,22 @@ import java.util.zip.*;
         if (DataTypes.isStringType(var.getType())) {
             VDataContainer.CString container = var.getStringContainer(null);
             container.run();
-            StringArray sa = (StringArray)container.asArray();
-            return sa.array();
+            try {
+                StringArray sa = (StringArray)container.asArray();
+                return sa.array();
+            } finally {
+                container.release();
+            }
         } else {
             DoubleVarContainer dbuf =
                 new DoubleVarContainer(this, var, new int[] {point},
                 false, ByteOrder.nativeOrder());
             dbuf.run();
-            return dbuf.asArray().array();
+            try {
+                return dbuf.asArray().array();
+            } finally {
+                dbuf.release();
+            }
         }
     }
 
@@ -1808,8 +2298,12 @@ import java.util.zip.*;
     public Object getRange(String varName, int first, int last,
         boolean oned) throws Throwable {
         DoubleVarContainer dbuf = getRangeBuffer(varName, first, last);
-        if (oned) return dbuf.as1DArray();
-        return dbuf.asArray().array();
+        try {
+            if (oned) return dbuf.as1DArray();
+            return dbuf.asArray().array();
+        } finally {
+            dbuf.release();
+        }
     }
 
     public Object getRange(String varName, int first, int last) throws
@@ -1820,7 +2314,11 @@ import java.util.zip.*;
     public Object getRangeOneD(String varName, int first, int last,
         boolean columnMajor) throws Throwable {
         DoubleVarContainer dbuf = getRangeBuffer(varName, first, last);
-        return dbuf.asOneDArray(columnMajor);
+        try {
+            return dbuf.asOneDArray(columnMajor);
+        } finally {
+            dbuf.release();
+        }
     }
 
     DoubleVarContainer getRangeBuffer(String varName, int first, int last)
@@ -1851,7 +2349,11 @@ import java.util.zip.*;
             throw new Throwable("Function not supported for string variables");
         }
         DoubleVarContainer dbuf = getRangeBuffer(varName, first, last);
-        return dbuf.asArrayElement(elements);
+        try {
+            return dbuf.asArrayElement(elements);
+        } finally {
+            dbuf.release();
+        }
     }
 
     public boolean isCompatible(String varName, Class cl) throws Throwable {
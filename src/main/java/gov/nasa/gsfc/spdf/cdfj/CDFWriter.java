@@ -480,8 +480,12 @@ public class CDFWriter extends GenericWriter {
 
     void copyVariableData(GenericReader cdf, String vn) throws 
         CDFException.ReaderError, CDFException.WriterError {
+        // compressed values are copied as is only if they are GZIP
+        // compressed, which is what this writer records in the CPR
+        int ctype = cdf.thisCDF.getVariable(vn).getCompressionType();
         if ((cdf.getByteOrder() == ByteOrder.LITTLE_ENDIAN) &&
-            (cdf.rowMajority() == rowMajority)) {
+            (cdf.rowMajority() == rowMajority) &&
+            ((ctype == BlockDecoder.NONE) || (ctype == BlockDecoder.GZIP))) {
             VariableDataBuffer[] dbufs = null;
             try {
                 Variable var = cdf.thisCDF.getVariable(vn);
@@ -0,0 +1,104 @@
+package gov.nasa.gsfc.spdf.cdfj;
+import java.io.*;
+import java.nio.*;
+/**
+ * ChannelReader reads CDF records from a random access source without
+ * mapping the source. Subclasses supply positional reads via
+ * readChannel, which must not depend on any shared position, so that
+ * a single instance may be shared by any number of threads without
+ * locking.
+ */
+abstract class ChannelReader {
+    static final int SCRATCH_SIZE = 256;
+    static final ThreadLocal<ByteBuffer> scratch = new ThreadLocal<ByteBuffer>() {
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocateDirect(SCRATCH_SIZE);
+        }
+    };
+
+    /**
+     * reads from the source until dst is full or end of source is reached.
+     * returns number of bytes read.
+     */
+    abstract int readChannel(ByteBuffer dst, long position) throws IOException;
+
+    /**
+     * returns size of the source.
+     */
+    abstract long size() throws IOException;
+
+    /**
+     * releases the source, and the pages of this reader in the shared
+     * page cache. Subclasses that hold a source must call super.close().
+     */
+    void close() throws IOException {
+        PageCache cache = ReaderFactory.pageCache;
+        if (cache != null) cache.remove(this);
+    }
+
+    /**
+     * returns the record that starts at the given offset.
+     * sizeOffset is the offset within a record of the low order int of
+     * the record size.
+     */
+    ByteBuffer getRecord(long offset, int sizeOffset) throws IOException {
+        ByteBuffer lenBuf = scratch(4);
+        readFully(lenBuf, offset + sizeOffset);
+        return read(offset, lenBuf.getInt(0));
+    }
+
+    /**
+     * returns size bytes starting at the given offset in a new buffer,
+     * or null if fewer bytes are available.
+     */
+    ByteBuffer read(long offset, int size) throws IOException {
+        ByteBuffer bb = ByteBuffer.allocate(size);
+        int got = readFully(bb, offset);
+        if (got != size) {
+            System.out.println("Needed " + size + " bytes. Got " + got);
+            return null;
+        }
+        bb.position(0);
+        return bb;
+    }
+
+    /**
+     * returns the null terminated string of at most max bytes at the
+     * given offset.
+     */
+    String getString(long offset, int max) throws IOException {
+        ByteBuffer _buf = scratch(max);
+        int got = readFully(_buf, offset);
+        byte [] ba = new byte[got];
+        int i = 0;
+        for (; i < got; i++) {
+            ba[i] = _buf.get(i);
+            if (ba[i] == 0) break;
+        }
+        return new String(ba, 0, i);
+    }
+
+    /**
+     * reads from position until dst is full or end of source is reached,
+     * via the shared page cache if one is configured.
+     * returns number of bytes read.
+     */
+    int readFully(ByteBuffer dst, long position) throws IOException {
+        PageCache cache = ReaderFactory.pageCache;
+        if ((cache != null) && (dst.remaining() <= cache.capacity/8)) {
+            return cache.read(this, dst, position);
+        }
+        return readChannel(dst, position);
+    }
+
+    ByteBuffer scratch(int size) {
+        ByteBuffer _buf = scratch.get();
+        if (_buf.capacity() < size) {
+            _buf = ByteBuffer.allocateDirect(size);
+            scratch.set(_buf);
+        }
+        _buf.clear();
+        _buf.limit(size);
+        return _buf;
+    }
+}
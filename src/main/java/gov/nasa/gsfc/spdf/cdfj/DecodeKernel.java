@@ -0,0 +1,383 @@
+package gov.nasa.gsfc.spdf.cdfj;
+import java.nio.*;
+/**
+ * DecodeKernel converts values of a CDF data type, read from a ByteBuffer
+ * in the buffer's byte order, to double, float or long, without going
+ * through the reflective accessors in DataTypes.method and the Number
+ * each of them returns. Values are read in chunks, by bulk gets from a
+ * view of the buffer of the source type, into per thread arrays, from
+ * which they are widened. Unsigned values are widened without sign.
+ * Kernels are held in a table indexed by data type.
+ */
+abstract class DecodeKernel {
+    static final int CHUNK = 1024;
+    static final DecodeKernel[] kernels = new DecodeKernel[DataTypes.LAST_TYPE];
+    static {
+        kernels[1] = new Int8(false);
+        kernels[41] = kernels[1];
+        kernels[11] = new Int8(true);
+        kernels[2] = new Int16(false);
+        kernels[12] = new Int16(true);
+        kernels[4] = new Int32(false);
+        kernels[14] = new Int32(true);
+        kernels[8] = new Int64();
+        kernels[33] = kernels[8];
+        kernels[21] = new Float32();
+        kernels[44] = kernels[21];
+        kernels[22] = new Float64();
+        kernels[45] = kernels[22];
+        kernels[31] = kernels[22];
+        kernels[32] = kernels[22];
+    }
+    static final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
+    /**
+     * returns the kernel for the given data type, or null if values of
+     * the type are not numbers.
+     */
+    static DecodeKernel get(int type) {
+        if ((type < 0) || (type >= kernels.length)) return null;
+        return kernels[type];
+    }
+
+    /**
+     * reads n values at the position of src into dst, starting at off.
+     * The position of src is advanced past the values read.
+     */
+    abstract void toDouble(ByteBuffer src, double[] dst, int off, int n);
+
+    /**
+     * reads n values at the position of src into dst, starting at off.
+     * The position of src is advanced past the values read.
+     */
+    abstract void toLong(ByteBuffer src, long[] dst, int off, int n);
+
+    /**
+     * returns the value at the position of src, advancing the position.
+     */
+    abstract double getDouble(ByteBuffer src);
+
+    /**
+     * returns the value at the position of src, advancing the position.
+     */
+    abstract long getLong(ByteBuffer src);
+
+    /**
+     * reads n values at the position of src into dst, starting at off.
+     * The position of src is advanced past the values read.
+     */
+    void toFloat(ByteBuffer src, float[] dst, int off, int n) {
+        double[] d = scratch.get().d;
+        while (n > 0) {
+            int m = (n < CHUNK)?n:CHUNK;
+            toDouble(src, d, 0, m);
+            for (int i = 0; i < m; i++) dst[off + i] = (float)d[i];
+            off += m;
+            n -= m;
+        }
+    }
+
+    static class Scratch {
+        final byte[] b = new byte[CHUNK];
+        final short[] s = new short[CHUNK];
+        final int[] i = new int[CHUNK];
+        final double[] d = new double[CHUNK];
+    }
+
+    static class Int8 extends DecodeKernel {
+        final boolean unsigned;
+        Int8(boolean unsigned) {
+            this.unsigned = unsigned;
+        }
+
+        void toDouble(ByteBuffer src, double[] dst, int off, int n) {
+            byte[] b = scratch.get().b;
+            while (n > 0) {
+                int m = (n < CHUNK)?n:CHUNK;
+                src.get(b, 0, m);
+                if (unsigned) {
+                    for (int i = 0; i < m; i++) dst[off + i] = b[i] & 0xff;
+                } else {
+                    for (int i = 0; i < m; i++) dst[off + i] = b[i];
+                }
+                off += m;
+                n -= m;
+            }
+        }
+
+        void toLong(ByteBuffer src, long[] dst, int off, int n) {
+            byte[] b = scratch.get().b;
+            while (n > 0) {
+                int m = (n < CHUNK)?n:CHUNK;
+                src.get(b, 0, m);
+                if (unsigned) {
+                    for (int i = 0; i < m; i++) dst[off + i] = b[i] & 0xff;
+                } else {
+                    for (int i = 0; i < m; i++) dst[off + i] = b[i];
+                }
+                off += m;
+                n -= m;
+            }
+        }
+
+        void toFloat(ByteBuffer src, float[] dst, int off, int n) {
+            byte[] b = scratch.get().b;
+            while (n > 0) {
+                int m = (n < CHUNK)?n:CHUNK;
+                src.get(b, 0, m);
+                if (unsigned) {
+                    for (int i = 0; i < m; i++) dst[off + i] = b[i] & 0xff;
+                } else {
+                    for (int i = 0; i < m; i++) dst[off + i] = b[i];
+                }
+                off += m;
+                n -= m;
+            }
+        }
+
+        double getDouble(ByteBuffer src) {
+            return getLong(src);
+        }
+
+        long getLong(ByteBuffer src) {
+            byte x = src.get();
+            return (unsigned)?(x & 0xff):x;
+        }
+    }
+
+    static class Int16 extends DecodeKernel {
+        final boolean unsigned;
+        Int16(boolean unsigned) {
+            this.unsigned = unsigned;
+        }
+
+        void toDouble(ByteBuffer src, double[] dst, int off, int n) {
+            short[] s = scratch.get().s;
+            ShortBuffer view = src.asShortBuffer();
+            int end = src.position() + 2*n;
+            while (n > 0) {
+                int m = (n < CHUNK)?n:CHUNK;
+                view.get(s, 0, m);
+                if (unsigned) {
+                    for (int i = 0; i < m; i++) dst[off + i] = s[i] & 0xffff;
+                } else {
+                    for (int i = 0; i < m; i++) dst[off + i] = s[i];
+                }
+                off += m;
+                n -= m;
+            }
+            src.position(end);
+        }
+
+        void toLong(ByteBuffer src, long[] dst, int off, int n) {
+            short[] s = scratch.get().s;
+            ShortBuffer view = src.asShortBuffer();
+            int end = src.position() + 2*n;
+            while (n > 0) {
+                int m = (n < CHUNK)?n:CHUNK;
+                view.get(s, 0, m);
+                if (unsigned) {
+                    for (int i = 0; i < m; i++) dst[off + i] = s[i] & 0xffff;
+                } else {
+                    for (int i = 0; i < m; i++) dst[off + i] = s[i];
+                }
+                off += m;
+                n -= m;
+            }
+            src.position(end);
+        }
+
+        void toFloat(ByteBuffer src, float[] dst, int off, int n) {
+            short[] s = scratch.get().s;
+            ShortBuffer view = src.asShortBuffer();
+            int end = src.position() + 2*n;
+            while (n > 0) {
+                int m = (n < CHUNK)?n:CHUNK;
+                view.get(s, 0, m);
+                if (unsigned) {
+                    for (int i = 0; i < m; i++) dst[off + i] = s[i] & 0xffff;
+                } else {
+                    for (int i = 0; i < m; i++) dst[off + i] = s[i];
+                }
+                off += m;
+                n -= m;
+            }
+            src.position(end);
+        }
+
+        double getDouble(ByteBuffer src) {
+            return getLong(src);
+        }
+
+        long getLong(ByteBuffer src) {
+            short x = src.getShort();
+            return (unsigned)?(x & 0xffff):x;
+        }
+    }
+
+    static class Int32 extends DecodeKernel {
+        final boolean unsigned;
+        Int32(boolean unsigned) {
+            this.unsigned = unsigned;
+        }
+
+        void toDouble(ByteBuffer src, double[] dst, int off, int n) {
+            int[] a = scratch.get().i;
+            IntBuffer view = src.asIntBuffer();
+            int end = src.position() + 4*n;
+            while (n > 0) {
+                int m = (n < CHUNK)?n:CHUNK;
+                view.get(a, 0, m);
+                if (unsigned) {
+                    for (int i = 0; i < m; i++) {
+                        dst[off + i] = a[i] & 0xffffffffL;
+                    }
+                } else {
+                    for (int i = 0; i < m; i++) dst[off + i] = a[i];
+                }
+                off += m;
+                n -= m;
+            }
+            src.position(end);
+        }
+
+        void toLong(ByteBuffer src, long[] dst, int off, int n) {
+            int[] a = scratch.get().i;
+            IntBuffer view = src.asIntBuffer();
+            int end = src.position() + 4*n;
+            while (n > 0) {
+                int m = (n < CHUNK)?n:CHUNK;
+                view.get(a, 0, m);
+                if (unsigned) {
+                    for (int i = 0; i < m; i++) {
+                        dst[off + i] = a[i] & 0xffffffffL;
+                    }
+                } else {
+                    for (int i = 0; i < m; i++) dst[off + i] = a[i];
+                }
+                off += m;
+                n -= m;
+            }
+            src.position(end);
+        }
+
+        void toFloat(ByteBuffer src, float[] dst, int off, int n) {
+            int[] a = scratch.get().i;
+            IntBuffer view = src.asIntBuffer();
+            int end = src.position() + 4*n;
+            while (n > 0) {
+                int m = (n < CHUNK)?n:CHUNK;
+                view.get(a, 0, m);
+                if (unsigned) {
+                    for (int i = 0; i < m; i++) {
+                        dst[off + i] = a[i] & 0xffffffffL;
+                    }
+                } else {
+                    for (int i = 0; i < m; i++) dst[off + i] = a[i];
+                }
+                off += m;
+                n -= m;
+            }
+            src.position(end);
+        }
+
+        double getDouble(ByteBuffer src) {
+            return getLong(src);
+        }
+
+        long getLong(ByteBuffer src) {
+            int x = src.getInt();
+            return (unsigned)?(x & 0xffffffffL):x;
+        }
+    }
+
+    static class Int64 extends DecodeKernel {
+        void toDouble(ByteBuffer src, double[] dst, int off, int n) {
+            LongBuffer view = src.asLongBuffer();
+            int end = src.position() + 8*n;
+            for (int i = 0; i < n; i++) dst[off + i] = view.get();
+            src.position(end);
+        }
+
+        void toFloat(ByteBuffer src, float[] dst, int off, int n) {
+            LongBuffer view = src.asLongBuffer();
+            int end = src.position() + 8*n;
+            for (int i = 0; i < n; i++) dst[off + i] = view.get();
+            src.position(end);
+        }
+
+        void toLong(ByteBuffer src, long[] dst, int off, int n) {
+            LongBuffer view = src.asLongBuffer();
+            int end = src.position() + 8*n;
+            view.get(dst, off, n);
+            src.position(end);
+        }
+
+        double getDouble(ByteBuffer src) {
+            return src.getLong();
+        }
+
+        long getLong(ByteBuffer src) {
+            return src.getLong();
+        }
+    }
+
+    static class Float32 extends DecodeKernel {
+        void toDouble(ByteBuffer src, double[] dst, int off, int n) {
+            FloatBuffer view = src.asFloatBuffer();
+            int end = src.position() + 4*n;
+            for (int i = 0; i < n; i++) dst[off + i] = view.get();
+            src.position(end);
+        }
+
+        void toFloat(ByteBuffer src, float[] dst, int off, int n) {
+            FloatBuffer view = src.asFloatBuffer();
+            int end = src.position() + 4*n;
+            view.get(dst, off, n);
+            src.position(end);
+        }
+
+        void toLong(ByteBuffer src, long[] dst, int off, int n) {
+            FloatBuffer view = src.asFloatBuffer();
+            int end = src.position() + 4*n;
+            for (int i = 0; i < n; i++) dst[off + i] = (long)view.get();
+            src.position(end);
+        }
+
+        double getDouble(ByteBuffer src) {
+            return src.getFloat();
+        }
+
+        long getLong(ByteBuffer src) {
+            return (long)src.getFloat();
+        }
+    }
+
+    static class Float64 extends DecodeKernel {
+        void toDouble(ByteBuffer src, double[] dst, int off, int n) {
+            DoubleBuffer view = src.asDoubleBuffer();
+            int end = src.position() + 8*n;
+            view.get(dst, off, n);
+            src.position(end);
+        }
+
+        void toLong(ByteBuffer src, long[] dst, int off, int n) {
+            DoubleBuffer view = src.asDoubleBuffer();
+            int end = src.position() + 8*n;
+            for (int i = 0; i < n; i++) dst[off + i] = (long)view.get();
+            src.position(end);
+        }
+
+        double getDouble(ByteBuffer src) {
+            return src.getDouble();
+        }
+
+        long getLong(ByteBuffer src) {
+            return (long)src.getDouble();
+        }
+    }
+}
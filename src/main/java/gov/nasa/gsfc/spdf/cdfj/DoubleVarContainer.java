@@ -36,15 +36,9 @@ public final class DoubleVarContainer extends BaseVarContainer implements
         return new double[size];
     }
 
-    void doMissing(int records, ByteBuffer _buf, Object _data, int rec) {
+    void doMissing(int records, ByteBuffer _buf, Object _data) {
         double[] data = (double[])_data;
-        double[] repl = null;
-        try {
-            repl = (rec < 0)?dpad:var.asDoubleArray(new int[]{rec});
-        } catch(Throwable th) {
-            th.printStackTrace();
-            System.out.println("Should not see this.");
-        }
+        double[] repl = dpad;
         int position = _buf.position();
         DoubleBuffer dbuf = _buf.asDoubleBuffer();
         int rem = records;
@@ -76,7 +70,6 @@ public final class DoubleVarContainer extends BaseVarContainer implements
         double[] data = (double[])_data;
         int position = _buf.position();
         DoubleBuffer dbuf = _buf.asDoubleBuffer();
-        Method method;
         int processed = 0;
         switch (DataTypes.typeCategory[type]) {
         case 0:
@@ -114,31 +107,12 @@ public final class DoubleVarContainer extends BaseVarContainer implements
             _buf.position(position);
             break;
         case 2:
-            method = DataTypes.method[type];
-            while (processed < toprocess) {
-                int _num = (toprocess - processed)*elements;
-                if (_num > data.length) _num = data.length;
-                for (int e = 0; e < _num; e++) {
-                    Number num = (Number)method.invoke(bv, new Object[] {});
-                    data[e] = num.doubleValue();
-                }
-                dbuf.put(data, 0, _num);
-                position += 8*_num;
-                processed += (_num/elements);
-            }
-            _buf.position(position);
-            break;
         case 3:
-            method = DataTypes.method[type];
-            long longInt = DataTypes.longInt[type];
+            DecodeKernel kernel = DecodeKernel.get(type);
             while (processed < toprocess) {
                 int _num = (toprocess - processed)*elements;
                 if (_num > data.length) _num = data.length;
-                for (int e = 0; e < _num; e++) {
-                    Number num = (Number)method.invoke(bv, new Object[] {});
-                    int x = num.intValue();
-                    data[e] = (x >= 0)?(double)x:(double)(longInt + x);
-                }
+                kernel.toDouble(bv, data, 0, _num);
                 dbuf.put(data, 0, _num);
                 position += 8*_num;
                 processed += (_num/elements);
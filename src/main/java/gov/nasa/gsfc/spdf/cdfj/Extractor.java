@@ -158,7 +158,7 @@ public class Extractor {
                 while (offset < first) ldata[offset++] = pad.longValue();
             }
                 
-            Method method;
+            DecodeKernel kernel;
             switch (DataTypes.typeCategory[type]) {
             case 0:
                 FloatBuffer bvf = bv.asFloatBuffer();
@@ -169,19 +169,11 @@ public class Extractor {
                 while (offset <= last) data[offset++] = bvd.get();
                 break;
             case 2:
-                method = DataTypes.method[type];
-                while (offset <= last) {
-                    Number num = (Number)method.invoke(bv, new Object[] {});
-                    data[offset++] = num.doubleValue();
-                }
-                break;
             case 3:
-                method = DataTypes.method[type];
-                long longInt = DataTypes.longInt[type];
-                while (offset <= last) {
-                    Number num = (Number)method.invoke(bv, new Object[] {});
-                    int x = num.intValue();
-                    data[offset++] = (x >= 0)?(double)x:(double)(longInt + x);
+                kernel = DecodeKernel.get(type);
+                if (offset <= last) {
+                    kernel.toDouble(bv, data, offset, last - offset + 1);
+                    offset = last + 1;
                 }
                 break;
             case 5:
@@ -347,7 +339,7 @@ public class Extractor {
                 }
                 offset++;
             }
-            Method method;
+            DecodeKernel kernel;
             switch (DataTypes.typeCategory[type]) {
             case 0:
                 FloatBuffer bvf = bv.asFloatBuffer();
@@ -382,13 +374,11 @@ public class Extractor {
     // start at the current buffer position;
     // on return, buffer position is advanced by the data read
     static void doSignedInteger(ByteBuffer bv, int type, int first, 
-        int last, int count, double[][] data) throws
-        IllegalAccessException, InvocationTargetException {
-        Method method = DataTypes.method[type];
+        int last, int count, double[][] data) {
+        DecodeKernel kernel = DecodeKernel.get(type);
         for (int n = first; n <= last; n++) {
             for (int e = 0; e < count; e++) {
-                Number num = (Number)method.invoke(bv, new Object[] {});
-                data[n][e] = num.doubleValue();
+                data[n][e] = kernel.getDouble(bv);
             }
         }
     }
@@ -396,8 +386,7 @@ public class Extractor {
     // for a range of points of scalar variable
     // on return, buffer position is advanced by the data read
     static void doSignedInteger(ByteBuffer bv, int pos, int type,
-        int size, int first, int last, double[] data) throws
-        IllegalAccessException, InvocationTargetException {
+        int size, int first, int last, double[] data) {
         int index = first;
         doSignedInteger(bv, pos, type, size, first, last, data, index);
 /*
@@ -414,30 +403,26 @@ public class Extractor {
 
     // 
     static int doSignedInteger(ByteBuffer bv, int pos, int type,
-        int size, int first, int last, double[] data, int index) throws
-        IllegalAccessException, InvocationTargetException {
-        Method method = DataTypes.method[type];
+        int size, int first, int last, double[] data, int index) {
+        DecodeKernel kernel = DecodeKernel.get(type);
         bv.position(pos);
         for (int n = first; n <= last; n++) {
             bv.position(pos);
-            Number num = (Number)method.invoke(bv, new Object[] {});
-            data[index++] = num.doubleValue();
+            data[index++] = kernel.getDouble(bv);
             pos += size;
         }
         return index;
     }
 
     static void doSignedInteger(ByteBuffer bv, int pos, int type,
-        int size, int first, int last, int[] offsets, double[][] data) throws
-        IllegalAccessException, InvocationTargetException {
-        Method method = DataTypes.method[type];
+        int size, int first, int last, int[] offsets, double[][] data) {
+        DecodeKernel kernel = DecodeKernel.get(type);
         bv.position(pos);
         int ne = offsets.length;
         for (int n = first; n <= last; n++) {
             for (int e = 0; e < ne; e++) {
                 bv.position(pos + offsets[e]);
-                Number num = (Number)method.invoke(bv, new Object[] {});
-                data[n][e] = num.doubleValue();
+                data[n][e] = kernel.getDouble(bv);
             }
             pos += size;
         }
@@ -445,15 +430,14 @@ public class Extractor {
 
     static int doSignedInteger(ByteBuffer bv, int pos, int type,
         int size, int first, int last, int[] offsets, double[][] data,
-        int index) throws IllegalAccessException, InvocationTargetException {
-        Method method = DataTypes.method[type];
+        int index) {
+        DecodeKernel kernel = DecodeKernel.get(type);
         bv.position(pos);
         int ne = offsets.length;
         for (int n = first; n <= last; n++) {
             for (int e = 0; e < ne; e++) {
                 bv.position(pos + offsets[e]);
-                Number num = (Number)method.invoke(bv, new Object[] {});
-                data[index][e] = num.doubleValue();
+                data[index][e] = kernel.getDouble(bv);
             }
             pos += size;
             index++;
@@ -462,63 +446,47 @@ public class Extractor {
     }
 
     static void doUnsignedInteger(ByteBuffer bv, int type, int first, 
-        int last, int count, double[][] data) throws
-        IllegalAccessException, InvocationTargetException {
-        Method method = DataTypes.method[type];
-        long longInt = DataTypes.longInt[type];
+        int last, int count, double[][] data) {
+        DecodeKernel kernel = DecodeKernel.get(type);
         for (int n = first; n <= last; n++) {
             for (int e = 0; e < count; e++) {
-                Number num = (Number)method.invoke(bv, new Object[] {});
-                int x = num.intValue();
-                data[n][e] = (x >= 0)?(double)x:(double)(longInt + x);
+                data[n][e] = kernel.getDouble(bv);
             }
         }
     }
 
     static void doUnsignedInteger(ByteBuffer bv, int pos, int type,
-        int size, int first, int last, double[] data) throws
-        IllegalAccessException, InvocationTargetException {
-        Method method = DataTypes.method[type];
-        long longInt = DataTypes.longInt[type];
+        int size, int first, int last, double[] data) {
+        DecodeKernel kernel = DecodeKernel.get(type);
         bv.position(pos);
         for (int n = first; n <= last; n++) {
             bv.position(pos);
-            Number num = (Number)method.invoke(bv, new Object[] {});
-            int x = num.intValue();
-            data[n] = (x >= 0)?(double)x:(double)(longInt + x);
+            data[n] = kernel.getDouble(bv);
             pos += size;
         }
     }
 
     static int doUnsignedInteger(ByteBuffer bv, int pos, int type,
-        int size, int first, int last, double[] data, int index) throws
-        IllegalAccessException, InvocationTargetException {
-        Method method = DataTypes.method[type];
-        long longInt = DataTypes.longInt[type];
+        int size, int first, int last, double[] data, int index) {
+        DecodeKernel kernel = DecodeKernel.get(type);
         bv.position(pos);
         for (int n = first; n <= last; n++) {
             bv.position(pos);
-            Number num = (Number)method.invoke(bv, new Object[] {});
-            int x = num.intValue();
-            data[index++] = (x >= 0)?(double)x:(double)(longInt + x);
+            data[index++] = kernel.getDouble(bv);
             pos += size;
         }
         return index;
     }
 
     static void doUnsignedInteger(ByteBuffer bv, int pos, int type,
-        int size, int first, int last, int[] offsets, double[][] data) throws
-        IllegalAccessException, InvocationTargetException {
-        Method method = DataTypes.method[type];
-        long longInt = DataTypes.longInt[type];
+        int size, int first, int last, int[] offsets, double[][] data) {
+        DecodeKernel kernel = DecodeKernel.get(type);
         bv.position(pos);
         int ne = offsets.length;
         for (int n = first; n <= last; n++) {
             for (int e = 0; e < ne; e++) {
                 bv.position(pos + offsets[e]);
-                Number num = (Number)method.invoke(bv, new Object[] {});
-                int x = num.intValue();
-                data[n][e] = (x >= 0)?(double)x:(double)(longInt + x);
+                data[n][e] = kernel.getDouble(bv);
             }
             pos += size;
         }
@@ -526,17 +494,14 @@ public class Extractor {
 
     static int doUnsignedInteger(ByteBuffer bv, int pos, int type,
         int size, int first, int last, int[] offsets, double[][] data,
-        int index) throws IllegalAccessException, InvocationTargetException {
-        Method method = DataTypes.method[type];
-        long longInt = DataTypes.longInt[type];
+        int index) {
+        DecodeKernel kernel = DecodeKernel.get(type);
         bv.position(pos);
         int ne = offsets.length;
         for (int n = first; n <= last; n++) {
             for (int e = 0; e < ne; e++) {
                 bv.position(pos + offsets[e]);
-                Number num = (Number)method.invoke(bv, new Object[] {});
-                int x = num.intValue();
-                data[index][e] = (x >= 0)?(double)x:(double)(longInt + x);
+                data[index][e] = kernel.getDouble(bv);
             }
             pos += size;
             index++;
@@ -585,7 +550,7 @@ public class Extractor {
             } else {
                 while (offset < first) ldata[offset++] = longPadValue[element];
             }
-            Method method;
+            DecodeKernel kernel;
             int pos = bv.position() + loff;
             switch (DataTypes.typeCategory[type]) {
             case 0:
@@ -688,7 +653,7 @@ public class Extractor {
                     offset++;
                 }
             }
-            Method method;
+            DecodeKernel kernel;
             int pos = bv.position();
             switch (DataTypes.typeCategory[type]) {
             case 0:
@@ -996,24 +961,15 @@ public class Extractor {
             ByteBuffer bv = positionBuffer((CDFImpl)thisCDF, var, loc[2],
                 (int)(loc[1] - loc[0] + 1));
             int pos = bv.position() + (point - (int)loc[0])*itemSize;
-            Method method;
-            Number num;
             switch (DataTypes.typeCategory[type]) {
             case 0:
                 return new Double((double)bv.getFloat(pos));
             case 1:
                 return new Double(bv.getDouble(pos));
             case 2:
-                method = DataTypes.method[type];
-                num = (Number)method.invoke(bv, new Object[] {});
-                return new Double(num.doubleValue());
             case 3:
-                method = DataTypes.method[type];
-                long longInt = DataTypes.longInt[type];
-                num = (Number)method.invoke(bv, new Object[] {});
-                int x = num.intValue();
-                double d = (x >= 0)?(double)x:(double)(longInt + x);
-                return new Double(d);
+                bv.position(pos);
+                return new Double(DecodeKernel.get(type).getDouble(bv));
             case 5:
                 return new Long(bv.getLong(pos));
             }
@@ -1042,7 +998,7 @@ public class Extractor {
             bv.position(pos);
             int n = (((Integer)elementCount(var).elementAt(0))).intValue();
             double [] da = new double[n];
-            Method method;
+            DecodeKernel kernel;
             switch (DataTypes.typeCategory[type]) {
             case 0:
                 FloatBuffer bvf = bv.asFloatBuffer();
@@ -1057,19 +1013,10 @@ public class Extractor {
                 }
                 return da;
             case 2:
-                method = DataTypes.method[type];
-                for (int i = 0; i < n; i++) {
-                    Number num = (Number)method.invoke(bv, new Object[] {});
-                    da[i] = num.doubleValue();
-                }
-                return da;
             case 3:
-                method = DataTypes.method[type];
-                long longInt = DataTypes.longInt[type];
+                kernel = DecodeKernel.get(type);
                 for (int i = 0; i < n; i++) {
-                    Number num = (Number)method.invoke(bv, new Object[] {});
-                    int x = num.intValue();
-                    da[i] = (x >= 0)?(double)x:(double)(longInt + x);
+                    da[i] = kernel.getDouble(bv);
                 }
                 return da;
             }
@@ -1099,7 +1046,7 @@ public class Extractor {
             int n0 = (((Integer)elementCount(var).elementAt(0))).intValue();
             int n1 = (((Integer)elementCount(var).elementAt(1))).intValue();
             double [][] da = new double[n0][n1];
-            Method method;
+            DecodeKernel kernel;
             switch (DataTypes.typeCategory[type]) {
             case 0:
                 FloatBuffer bvf = bv.asFloatBuffer();
@@ -1134,45 +1081,34 @@ public class Extractor {
                 }
                 return da;
             case 2:
-                method = DataTypes.method[type];
+                kernel = DecodeKernel.get(type);
                 if (var.rowMajority()) {
                     for (int i = 0; i < n0; i++) {
                         for (int j = 0; j < n1; j++) {
-                            Number num = 
-                                (Number)method.invoke(bv, new Object[] {});
-                            da[i][j] = num.doubleValue();
+                            da[i][j] = kernel.getDouble(bv);
                         }
                     }
                 } else {
                     for (int i = 0; i < n1; i++) {
                         for (int j = 0; j < n0; j++) {
-                            Number num = 
-                                (Number)method.invoke(bv, new Object[] {});
-                            da[j][i] = num.doubleValue();
+                            da[j][i] = kernel.getDouble(bv);
                         }
                     }
                 }
                 return da;
             case 3:
-                method = DataTypes.method[type];
-                long longInt = DataTypes.longInt[type];
+                kernel = DecodeKernel.get(type);
                 if (var.rowMajority()) {
                     for (int i = 0; i < n0; i++) {
                         for (int j = 0; j < n1; j++) {
-                            Number num = 
-                                (Number)method.invoke(bv, new Object[] {});
-                            int x = num.intValue();
-                            double d = (x >= 0)?(double)x:(double)(longInt + x);
+                            double d = kernel.getDouble(bv);
                             da[i][j] = d;
                         }
                     }
                 } else {
                     for (int i = 0; i < n1; i++) {
                         for (int j = 0; j < n0; j++) {
-                            Number num = 
-                                (Number)method.invoke(bv, new Object[] {});
-                            int x = num.intValue();
-                            double d = (x >= 0)?(double)x:(double)(longInt + x);
+                            double d = kernel.getDouble(bv);
                             da[j][i] = d;
                         }
                     }
@@ -1346,7 +1282,7 @@ public class Extractor {
                 }
             }
             last = ((Integer)oa[2]).intValue();
-            Method method;
+            DecodeKernel kernel;
             switch (DataTypes.typeCategory[type]) {
             case 0:
                 FloatBuffer bvf = bv.asFloatBuffer();
@@ -1357,19 +1293,11 @@ public class Extractor {
                 while (offset <= (last - start)) data[offset++] = bvd.get();
                 break;
             case 2:
-                method = DataTypes.method[type];
-                while (offset <= (last - start)) {
-                    Number num = (Number)method.invoke(bv, new Object[] {});
-                    data[offset++] = num.doubleValue();
-                }
-                break;
             case 3:
-                method = DataTypes.method[type];
-                long longInt = DataTypes.longInt[type];
-                while (offset <= (last - start)) {
-                    Number num = (Number)method.invoke(bv, new Object[] {});
-                    int x = num.intValue();
-                    data[offset++] = (x >= 0)?(double)x:(double)(longInt + x);
+                kernel = DecodeKernel.get(type);
+                if (offset <= last - start) {
+                    kernel.toDouble(bv, data, offset, last - start - offset + 1);
+                    offset = last - start + 1;
                 }
                 break;
             case 5:
@@ -1948,15 +1876,7 @@ public class Extractor {
      */
     static ByteBuffer positionBuffer(CDFImpl impl, Variable var, long offset,
         int count) {
-        ByteBuffer bv;
-        if (!var.isCompressed()) {
-            bv = impl.getValueBuffer(offset);
-        } else {
-            int size = var.getDataItemSize();
-            bv = impl.getValueBuffer(offset, size , count);
-        }
-        bv.order(impl.getByteOrder());
-        return bv;
+        return impl.positionBuffer(var, offset, count);
     }
 
     /**
@@ -1971,7 +1891,12 @@ public class Extractor {
         long [] loc = (long [])locations.elementAt(blk);
         int first = (int)loc[0];
         int last = (int)loc[1];
-        ByteBuffer bv = positionBuffer(impl, var, loc[2], (last - first + 1));
+        int count = last - first + 1;
+        int needed = count;
+        if (var.recordVariance() && (blk == blockRange[1]) && (last > end)) {
+            needed = (end < first)?1:(end - first + 1);
+        }
+        ByteBuffer bv = impl.positionBuffer(var, loc[2], count, needed);
         if (var.recordVariance()) {
             if (blk == blockRange[0]) {// position to first needed
                 int size = var.getDataItemSize();
@@ -2095,15 +2020,13 @@ public class Extractor {
                 }
                 break;
             case 2:
-                Method method = DataTypes.method[type];
+                DecodeKernel kernel = DecodeKernel.get(type);
                 if (var.rowMajority()) {
                     for (int n = first; n <= last; n++) {
                         for (int m = 0; m < n0; m++) {
                             for (int l = 0; l < n1; l++) {
                                 for (int k = 0; k < n2; k++) {
-                                    Number num =
-                                    (Number)method.invoke(bv, new Object[] {});
-                                    data[n][m][l][k] = num.doubleValue();
+                                    data[n][m][l][k] = kernel.getDouble(bv);
                                 }
                             }
                         }
@@ -2113,9 +2036,7 @@ public class Extractor {
                         for (int m = 0; m < n2; m++) {
                             for (int l = 0; l < n1; l++) {
                                 for (int k = 0; k < n0; k++) {
-                                    Number num =
-                                    (Number)method.invoke(bv, new Object[] {});
-                                    data[n][k][l][m] = num.doubleValue();
+                                    data[n][k][l][m] = kernel.getDouble(bv);
                                 }
                             }
                         }
@@ -2123,18 +2044,13 @@ public class Extractor {
                 }
                 break;
             case 3:
-                method = DataTypes.method[type];
-                long longInt = DataTypes.longInt[type];
+                kernel = DecodeKernel.get(type);
                 if (var.rowMajority()) {
                     for (int n = first; n <= last; n++) {
                         for (int m = 0; m < n0; m++) {
                             for (int l = 0; l < n1; l++) {
                                 for (int k = 0; k < n2; k++) {
-                                    Number num =
-                                    (Number)method.invoke(bv, new Object[] {});
-                                    int x = num.intValue();
-                                    data[n][m][l][k] =
-                                      (x >= 0)?(double)x:(double)(longInt + x);
+                                    data[n][m][l][k] = kernel.getDouble(bv);
                                 }
                             }
                         }
@@ -2144,11 +2060,7 @@ public class Extractor {
                         for (int m = 0; m < n2; m++) {
                             for (int l = 0; l < n1; l++) {
                                 for (int k = 0; k < n0; k++) {
-                                    Number num =
-                                    (Number)method.invoke(bv, new Object[] {});
-                                    int x = num.intValue();
-                                    data[n][k][l][m] =
-                                      (x >= 0)?(double)x:(double)(longInt + x);
+                                    data[n][k][l][m] = kernel.getDouble(bv);
                                 }
                             }
                         }
@@ -2185,7 +2097,7 @@ public class Extractor {
             int n1 = (((Integer)elementCount(var).elementAt(1))).intValue();
             int n2 = (((Integer)elementCount(var).elementAt(2))).intValue();
             double [][][] da = new double[n0][n1][n2];
-            Method method;
+            DecodeKernel kernel;
             switch (DataTypes.typeCategory[type]) {
             case 0:
                 FloatBuffer bvf = bv.asFloatBuffer();
@@ -2228,14 +2140,12 @@ public class Extractor {
                 }
                 return da;
             case 2:
-                method = DataTypes.method[type];
+                kernel = DecodeKernel.get(type);
                 if (var.rowMajority()) {
                     for (int i = 0; i < n0; i++) {
                         for (int j = 0; j < n1; j++) {
                             for (int k = 0; k < n2; k++) {
-                                Number num = 
-                                    (Number)method.invoke(bv, new Object[] {});
-                                da[i][j][k] = num.doubleValue();
+                                da[i][j][k] = kernel.getDouble(bv);
                             }
                         }
                     }
@@ -2243,26 +2153,19 @@ public class Extractor {
                     for (int i = 0; i < n2; i++) {
                         for (int j = 0; j < n1; j++) {
                             for (int k = 0; k < n0; k++) {
-                                Number num = 
-                                    (Number)method.invoke(bv, new Object[] {});
-                                da[k][j][i] = num.doubleValue();
+                                da[k][j][i] = kernel.getDouble(bv);
                             }
                         }
                     }
                 }
                 return da;
             case 3:
-                method = DataTypes.method[type];
-                long longInt = DataTypes.longInt[type];
+                kernel = DecodeKernel.get(type);
                 if (var.rowMajority()) {
                     for (int i = 0; i < n0; i++) {
                         for (int j = 0; j < n1; j++) {
                             for (int k = 0; k < n2; k++) {
-                                Number num = 
-                                    (Number)method.invoke(bv, new Object[] {});
-                                int x = num.intValue();
-                                double d = (x >= 0)?(double)x:
-                                    (double)(longInt + x);
+                                double d = kernel.getDouble(bv);
                                 da[i][j][k] = d;
                             }
                         }
@@ -2271,11 +2174,7 @@ public class Extractor {
                     for (int i = 0; i < n2; i++) {
                         for (int j = 0; j < n1; j++) {
                             for (int k = 0; k < n0; k++) {
-                                Number num = 
-                                    (Number)method.invoke(bv, new Object[] {});
-                                int x = num.intValue();
-                                double d = (x >= 0)?(double)x:
-                                    (double)(longInt + x);
+                                double d = kernel.getDouble(bv);
                                 da[k][j][i] = d;
                             }
                         }
@@ -2311,7 +2210,7 @@ public class Extractor {
                return;
            }
        }
-        Method method;
+        DecodeKernel kernel;
         double[] data = null;
         if (DataTypes.typeCategory[type] != DataTypes.LONG) {
             data = (double[])result;
@@ -2330,19 +2229,10 @@ public class Extractor {
             bvd.get(data, offset, number);
             break;
         case 2:
-            method = DataTypes.method[type];
-            for (int e = 0; e < number; e++) {
-                Number num = (Number)method.invoke(bv, new Object[] {});
-                data[offset + e] = num.doubleValue();
-            }
-            break;
         case 3:
-            method = DataTypes.method[type];
-            long longInt = DataTypes.longInt[type];
+            kernel = DecodeKernel.get(type);
             for (int e = 0; e < number; e++) {
-                Number num = (Number)method.invoke(bv, new Object[] {});
-                int x = num.intValue();
-                data[offset + e] = (x >= 0)?(double)x:(double)(longInt + x);
+                data[offset + e] = kernel.getDouble(bv);
             }
             break;
         case 5:
@@ -2698,7 +2588,7 @@ public class Extractor {
     static void do1D(ByteBuffer bv, int type, float[] tf, double[] data,
        int offset, int count, int elements, int _stride) throws
        IllegalAccessException, InvocationTargetException, Throwable {
-        Method method;
+        DecodeKernel kernel;
         int span = _stride*elements;
         int pos = bv.position();
         switch (DataTypes.typeCategory[type]) {
@@ -2721,29 +2611,13 @@ public class Extractor {
             }
             break;
         case 2:
-            method = DataTypes.method[type];
-            span *= DataTypes.size[type];
-            for (int n = 0; n < count; n++) {
-                bv.position(pos + n*span);
-                for (int e = 0; e < elements; e++) {
-                    Number num = 
-                        (Number)method.invoke(bv, new Object[] {});
-                    data[offset++] = num.doubleValue();
-                }
-            }
-            break;
         case 3:
-            method = DataTypes.method[type];
+            kernel = DecodeKernel.get(type);
             span *= DataTypes.size[type];
-            long longInt = DataTypes.longInt[type];
             for (int n = 0; n < count; n++) {
-                bv.position(n*span);
+                bv.position(pos + n*span);
                 for (int e = 0; e < elements; e++) {
-                    Number num = (Number)method.invoke(bv,
-                        new Object[] {});
-                    int x = num.intValue();
-                    data[offset++] =
-                        (x >= 0)?(double)x:(double)(longInt + x);
+                    data[offset++] = kernel.getDouble(bv);
                 }
             }
             break;
@@ -2792,7 +2666,7 @@ public class Extractor {
             int last = (int)loc[1];
             ByteBuffer bv = positionBuffer((CDFImpl)thisCDF, var, loc[2],
                 (last - first + 1));
-            Method method;
+            DecodeKernel kernel;
             int n = first % _stride;
             if (n == 0) {
                 n = first;
@@ -2814,21 +2688,17 @@ public class Extractor {
                 }
                 break;
             case 2:
-                method = DataTypes.method[type];
+                kernel = DecodeKernel.get(type);
                 for (; pos <= last; pos += _stride) {
                     bv.position(pos*size);
-                    Number num = (Number)method.invoke(bv, new Object[] {});
-                    data[next++] = num.doubleValue();
+                    data[next++] = kernel.getDouble(bv);
                 }
                 break;
             case 3:
-                method = DataTypes.method[type];    
-                long longInt = DataTypes.longInt[type];
+                kernel = DecodeKernel.get(type);    
                 for (; pos <= last; pos += _stride) {
                     bv.position(pos*size);
-                    Number num = (Number)method.invoke(bv, new Object[] {});
-                    int x = num.intValue();
-                    data[next++] = (x >= 0)?(double)x:(double)(longInt + x);
+                    data[next++] = kernel.getDouble(bv);
                 }
                 break;
             case 5:
@@ -2888,7 +2758,7 @@ public class Extractor {
             int last = (int)loc[1];
             ByteBuffer bv = positionBuffer((CDFImpl)thisCDF, var, loc[2],
                 (last - first + 1));
-            Method method;
+            DecodeKernel kernel;
             int n = first % _stride;
             if (n == 0) {
                 n = first;
@@ -2930,16 +2800,15 @@ public class Extractor {
     }
     static int doSignedInteger(ByteBuffer bv, int pos, int type,
         int size, int first, int last, double[] data, int[] stride,
-        int point) throws IllegalAccessException, InvocationTargetException {
-        Method method = DataTypes.method[type];
+        int point) {
+        DecodeKernel kernel = DecodeKernel.get(type);
         int index = point;
         bv.position(pos);
         int _stride = stride[0];
         int advance = _stride*size;
         int n = first;
         while (n <= last) {
-            Number num = (Number)method.invoke(bv, new Object[] {});
-            data[index++] = num.doubleValue();
+            data[index++] = kernel.getDouble(bv);
             n += _stride;
             pos += advance;
             bv.position(pos);
@@ -2948,9 +2817,8 @@ public class Extractor {
     }
     static int doUnsignedInteger(ByteBuffer bv, int pos, int type,
         int size, int first, int last, double[] data, int[] stride,
-        int point) throws IllegalAccessException, InvocationTargetException {
-        Method method = DataTypes.method[type];
-        long longInt = DataTypes.longInt[type];
+        int point) {
+        DecodeKernel kernel = DecodeKernel.get(type);
         int index = point;
         bv.position(pos);
         int _stride = stride[0];
@@ -2958,9 +2826,7 @@ public class Extractor {
         int n = first;
         while (n <= last) {
             bv.position(pos);
-            Number num = (Number)method.invoke(bv, new Object[] {});
-            int x = num.intValue();
-            data[index++] = (x >= 0)?(double)x:(double)(longInt + x);
+            data[index++] = kernel.getDouble(bv);
             n += _stride;
             pos += advance;
         }
@@ -3022,7 +2888,7 @@ public class Extractor {
                 }
             }
             n = 0;
-            Method method;
+            DecodeKernel kernel;
             switch (DataTypes.typeCategory[type]) {
             case 0:
                 FloatBuffer bvf = bv.asFloatBuffer();
@@ -3037,19 +2903,10 @@ public class Extractor {
                 }
                 break;
             case 2:
-                method = DataTypes.method[type];
-                for (; n <= last; n += _stride) {
-                    Number num = (Number)method.invoke(bv, new Object[] {});
-                    data[index++] = num.doubleValue();
-                }
-                break;
             case 3:
-                method = DataTypes.method[type];
-                long longInt = DataTypes.longInt[type];
+                kernel = DecodeKernel.get(type);
                 for (; n <= last; n += _stride) {
-                    Number num = (Number)method.invoke(bv, new Object[] {});
-                    int x = num.intValue();
-                    data[index++] = (x >= 0)?(double)x:(double)(longInt + x);
+                    data[index++] = kernel.getDouble(bv);
                 }
                 break;
             case 5:
@@ -3189,12 +3046,11 @@ public class Extractor {
     }
     static int doSignedInteger(ByteBuffer bv, int pos, int type,
         int size, int first, int last, double[] data, int index,
-        int[] stride) throws IllegalAccessException, InvocationTargetException {
-        Method method = DataTypes.method[type];
+        int[] stride) {
+        DecodeKernel kernel = DecodeKernel.get(type);
         bv.position(pos);
         for (int n = first; n <= last; n += stride[0]) {
-            Number num = (Number)method.invoke(bv, new Object[] {});
-            data[index++] = num.doubleValue();
+            data[index++] = kernel.getDouble(bv);
             pos += size;
             bv.position(pos);
         }
@@ -3202,15 +3058,12 @@ public class Extractor {
     }
     static int doUnsignedInteger(ByteBuffer bv, int pos, int type,
         int size, int first, int last, double[] data, int index,
-        int[] stride) throws IllegalAccessException, InvocationTargetException {
-        Method method = DataTypes.method[type];
-        long longInt = DataTypes.longInt[type];
+        int[] stride) {
+        DecodeKernel kernel = DecodeKernel.get(type);
         bv.position(pos);
         for (int n = first; n <= last; n += stride[0]) {
             bv.position(pos);
-            Number num = (Number)method.invoke(bv, new Object[] {});
-            int x = num.intValue();
-            data[index++] = (x >= 0)?(double)x:(double)(longInt + x);
+            data[index++] = kernel.getDouble(bv);
             pos += size;
         }
         return index;
@@ -3268,7 +3121,7 @@ public class Extractor {
         }
         double[] td = null;
         int n = 0;
-        Method method;
+        DecodeKernel kernel;
         switch (DataTypes.typeCategory[type]) {
         case 0:
             float[] tf = new float[number];
@@ -3326,21 +3179,11 @@ public class Extractor {
             }
             break;
         case 2:
-            method = DataTypes.method[type];
-            td = new double[number];
-            for (int e = 0; e < number; e++) {
-                Number num = (Number)method.invoke(bv, new Object[] {});
-                td[e] = num.doubleValue();
-            }
-            break;
         case 3:
-            method = DataTypes.method[type];
+            kernel = DecodeKernel.get(type);
             td = new double[number];
-            long longInt = DataTypes.longInt[type];
             for (int e = 0; e < number; e++) {
-                Number num = (Number)method.invoke(bv, new Object[] {});
-                int x = num.intValue();
-                td[e] = (x >= 0)?(double)x:(double)(longInt + x);
+                td[e] = kernel.getDouble(bv);
             }
             break;
         case 5:
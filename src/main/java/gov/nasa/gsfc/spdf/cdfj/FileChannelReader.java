@@ -0,0 +1,36 @@
+package gov.nasa.gsfc.spdf.cdfj;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+/**
+ * FileChannelReader reads from a FileChannel using positional reads.
+ * The channel's position is never used.
+ */
+final class FileChannelReader extends ChannelReader {
+    final FileChannel fc;
+
+    FileChannelReader(FileChannel fc) {
+        this.fc = fc;
+    }
+
+    int readChannel(ByteBuffer dst, long position) throws IOException {
+        int start = dst.position();
+        while (dst.hasRemaining()) {
+            int n = fc.read(dst, position + dst.position() - start);
+            if (n < 0) break;
+        }
+        return dst.position() - start;
+    }
+
+    long size() throws IOException {
+        return fc.size();
+    }
+
+    void close() throws IOException {
+        try {
+            fc.close();
+        } finally {
+            super.close();
+        }
+    }
+}
@@ -38,15 +38,9 @@ public final class FloatVarContainer extends BaseVarContainer implements
         return new float[size];
     }
 
-    void doMissing(int records, ByteBuffer _buf, Object _data, int rec) {
+    void doMissing(int records, ByteBuffer _buf, Object _data) {
         float[] data = (float[])_data;
-        float[] repl = null;
-        try {
-            repl = (rec < 0)?fpad:var.asFloatArray(new int[]{rec});
-        } catch(Throwable th) {
-            th.printStackTrace();
-            System.out.println("Should not see this.");
-        }
+        float[] repl = fpad;
         int position = _buf.position();
         FloatBuffer fbuf = _buf.asFloatBuffer();
         int rem = records;
@@ -74,7 +68,6 @@ public final class FloatVarContainer extends BaseVarContainer implements
         float[] data = (float[])_data;
         int position = _buf.position();
         FloatBuffer fbuf = _buf.asFloatBuffer();
-        Method method;
         int processed = 0;
         switch (DataTypes.typeCategory[type]) {
         case 0:
@@ -112,31 +105,12 @@ public final class FloatVarContainer extends BaseVarContainer implements
             _buf.position(position);
             break;
         case 2:
-            method = DataTypes.method[type];
-            while (processed < toprocess) {
-                int _num = (toprocess - processed)*elements;
-                if (_num > data.length) _num = data.length;
-                for (int e = 0; e < _num; e++) {
-                    Number num = (Number)method.invoke(bv, new Object[] {});
-                    data[e] = num.floatValue();
-                }
-                fbuf.put(data, 0, _num);
-                position += 4*_num;
-                processed += (_num/elements);
-            }
-            _buf.position(position);
-            break;
         case 3:
-            method = DataTypes.method[type];
-            long longInt = DataTypes.longInt[type];
+            DecodeKernel kernel = DecodeKernel.get(type);
             while (processed < toprocess) {
                 int _num = (toprocess - processed)*elements;
                 if (_num > data.length) _num = data.length;
-                for (int e = 0; e < _num; e++) {
-                    Number num = (Number)method.invoke(bv, new Object[] {});
-                    int x = num.intValue();
-                    data[e] = (x >= 0)?(float)x:(float)(longInt + x);
-                }
+                kernel.toFloat(bv, data, 0, _num);
                 fbuf.put(data, 0, _num);
                 position += 4*_num;
                 processed += (_num/elements);
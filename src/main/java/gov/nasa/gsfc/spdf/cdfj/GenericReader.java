@@ -11,9 +11,10 @@ import java.lang.reflect.*;
  * methods to access
  * time series.
  */
-public class GenericReader extends MetaData {
+public class GenericReader extends MetaData implements Closeable {
     private ThreadGroup tgroup;
     private Hashtable threadMap = new Hashtable();
+    private boolean closed;
     static final Hashtable classMap = new Hashtable();
     static {
         classMap.put("long", Long.TYPE);
@@ -35,13 +36,8 @@ public class GenericReader extends MetaData {
         File _file = new File(cdfFile);
         if (!_file.exists()) throw new CDFException.ReaderError(
             cdfFile + " does not exist.");
-        if (_file.length() > Integer.MAX_VALUE) throw new 
-            CDFException.ReaderError("Size of file " + cdfFile + " exceeds " +
-            "Integer.MAX_VALUE. If data for individual variables is less " +
-            "than this limit, you can use ReaderFactory.getReader(fileName) " +
-            "to get a " + "GenericReader instance for this file.");
         try {
-            thisCDF = CDFFactory.getCDF(cdfFile);
+            thisCDF = CDFFactory.acquireCDF(cdfFile);
         } catch (Throwable th) {
             throw new CDFException.ReaderError(th.getMessage());
         }
@@ -645,7 +641,74 @@ public class GenericReader extends MetaData {
             throw new CDFException.ReaderError(th.getMessage());
         }
         container.run();
-        return container.asOneDArray(columnMajor);
+        try {
+            return container.asOneDArray(columnMajor);
+        } finally {
+            container.release();
+        }
+    }
+
+    /**
+     * Decodes specified data into array, starting at offset, organized
+     * according to specified row majority. Returns the number of values
+     * decoded. Values are decoded directly into array, so that no
+     * intermediate buffer or array is allocated.
+     * @param    varName   variable name
+     * @param    recordRange 
+     * @param    preserve    specifies whether the target must preserve
+     *                       precision. if false, possible loss of precision
+     *                       is deemed acceptable.
+     * @param   columnMajor specifies whether the values conform
+     * to a columnMajor storage mode, i.e. the first index of a multi
+     * dimensional array varies the fastest.
+     * @param    array   destination of the values
+     * @param    offset  index in array of the first value
+     */ 
+    public final int getOneDArray(String varName, int[] recordRange,
+        boolean preserve, boolean columnMajor, double[] array, int offset)
+        throws CDFException.ReaderError {
+        return fillOneDArray(varName, Double.TYPE, recordRange, preserve,
+            columnMajor, array, offset);
+    }
+
+    /**
+     * Decodes specified data into array, starting at offset, organized
+     * according to specified row majority. Returns the number of values
+     * decoded.
+     * @see #getOneDArray(String varName, int[] recordRange,
+     * boolean preserve, boolean columnMajor, double[] array, int offset)
+     */ 
+    public final int getOneDArray(String varName, int[] recordRange,
+        boolean preserve, boolean columnMajor, float[] array, int offset)
+        throws CDFException.ReaderError {
+        return fillOneDArray(varName, Float.TYPE, recordRange, preserve,
+            columnMajor, array, offset);
+    }
+
+    /**
+     * Decodes specified data into array, starting at offset, organized
+     * according to specified row majority. Returns the number of values
+     * decoded.
+     * @see #getOneDArray(String varName, int[] recordRange,
+     * boolean preserve, boolean columnMajor, double[] array, int offset)
+     */ 
+    public final int getOneDArray(String varName, int[] recordRange,
+        boolean preserve, boolean columnMajor, long[] array, int offset)
+        throws CDFException.ReaderError {
+        return fillOneDArray(varName, Long.TYPE, recordRange, preserve,
+            columnMajor, array, offset);
+    }
+
+    int fillOneDArray(String varName, Class type, int[] recordRange,
+        boolean preserve, boolean columnMajor, Object array, int offset)
+        throws CDFException.ReaderError {
+        try {
+            VDataContainer container = getContainer(varName, type,
+                recordRange, preserve, ByteOrder.nativeOrder());
+            return container.asOneDArray(columnMajor, array, offset);
+        } catch (Throwable th) {
+            throw new CDFException.ReaderError(th.getMessage());
+        }
     }
 
     String threadName(String varName, String type, int[] recordRange,
@@ -693,6 +756,19 @@ public class GenericReader extends MetaData {
 
     public final boolean sourceIsFile() {return thisCDF.getSource().isFile();}
 
+    /**
+     * Releases the source CDF. Memory mapped for the source is unmapped
+     * immediately, without waiting for garbage collection, unless the
+     * source is shared with other readers via the reader cache.
+     * Neither this reader nor any buffer obtained from it may be used
+     * afterwards.
+     */
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        thisCDF.release();
+    }
+
     /**
      * Returns the name of the source CDF
      */
@@ -733,6 +809,16 @@ public class GenericReader extends MetaData {
 
     BaseVarContainer getRangeContainer(String varName, int[] range,
         String type, boolean preserve) throws Throwable {
+        return getRangeContainer(varName, range, type, preserve, null);
+    }
+
+    /**
+     * returns a container holding the values of records in range. If
+     * stride is not null, and the variable varies by record, only the
+     * sampled records are extracted.
+     */
+    BaseVarContainer getRangeContainer(String varName, int[] range,
+        String type, boolean preserve, Stride stride) throws Throwable {
         if (!existsVariable(varName)) throw new Throwable(
             "CDF does not hava a variable named " + varName);
         if (DataTypes.isStringType(getType(varName))) {
@@ -779,6 +865,10 @@ public class GenericReader extends MetaData {
             ccons.newInstance(thisCDF, thisCDF.getVariable(varName), range,
             preserve);
 */
+        if (stride != null) {
+            int records = range[range.length - 1] - range[0] + 1;
+            container.setSampling(stride.getStride(records));
+        }
         container.run();
         return container;
     }
@@ -802,11 +892,16 @@ public class GenericReader extends MetaData {
         int stride, String type, boolean preserve, boolean columnMajor) throws 
         CDFException.ReaderError {
         try {
-            BaseVarContainer container = getRangeContainer(varName,
-                range, type, preserve);
             int[] _stride = (stride > 0)?new int[]{stride}:
                    new int[] {-1, -stride};
-            return container.asOneDArray(columnMajor, new Stride(_stride));
+            Stride sampling = new Stride(_stride);
+            BaseVarContainer container = getRangeContainer(varName,
+                range, type, preserve, sampling);
+            try {
+                return container.asOneDArray(columnMajor, sampling);
+            } finally {
+                container.release();
+            }
         } catch (Throwable t) {
             throw new CDFException.ReaderError(t.getMessage());
         }
@@ -829,11 +924,16 @@ public class GenericReader extends MetaData {
         int stride, String type, boolean preserve) throws 
         CDFException.ReaderError {
         try {
-            BaseVarContainer container = getRangeContainer(varName,
-                new int[]{first, last}, type, preserve);
             int[] _stride = (stride > 0)?new int[]{stride}:
                    new int[] {-1, -stride};
-            return container.asSampledArray(new Stride(_stride));
+            Stride sampling = new Stride(_stride);
+            BaseVarContainer container = getRangeContainer(varName,
+                new int[]{first, last}, type, preserve, sampling);
+            try {
+                return container.asSampledArray(sampling);
+            } finally {
+                container.release();
+            }
         } catch (Throwable t) {
             throw new CDFException.ReaderError(t.getMessage());
         }
@@ -0,0 +1,179 @@
+package gov.nasa.gsfc.spdf.cdfj;
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.util.*;
+/**
+ * HttpRangeReader reads a remote CDF using HTTP Range requests, so that
+ * only the parts of the file that are needed are transferred.
+ * The file is fetched in blocks of blockSize bytes, which are kept in a
+ * least recently used cache of at most maxBlocks blocks.
+ * Consecutive missing blocks are fetched with a single request, which
+ * also reads ahead up to readAhead blocks past the requested range.
+ * Range requests are conditional on the ETag, or else the Last-Modified
+ * date, returned by the first request, so that a file which changes on
+ * the server while it is being read is reported as an error rather than
+ * read partly from each version.
+ */
+final class HttpRangeReader extends ChannelReader {
+    static int blockSize = 64*1024;
+    static int readAhead = 2;
+    static int maxBlocks = 256;
+    final URL url;
+    final long length;
+    final String validator;
+    final LinkedHashMap<Long, byte[]> blocks =
+        new LinkedHashMap<Long, byte[]>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(
+                Map.Entry<Long, byte[]> eldest) {
+                return size() > maxBlocks;
+            }
+        };
+    long requests;
+
+    HttpRangeReader(URL url, long length, String validator) {
+        this.url = url;
+        this.length = length;
+        this.validator = validator;
+    }
+
+    /**
+     * returns a reader for the given URL, or null if the server does
+     * not support byte range requests.
+     */
+    static HttpRangeReader open(URL url) throws IOException {
+        URLConnection con = new CDFUrl(url).openConnection();
+        if (!(con instanceof HttpURLConnection)) return null;
+        HttpURLConnection hcon = (HttpURLConnection)con;
+        hcon.setRequestProperty("Range", "bytes=0-0");
+        hcon.setRequestProperty("Accept-Encoding", "identity");
+        HttpRangeReader reader = null;
+        try {
+            if (hcon.getResponseCode() != HttpURLConnection.HTTP_PARTIAL) {
+                return null;
+            }
+            String range = hcon.getHeaderField("Content-Range");
+            if (range == null) return null;
+            int slash = range.lastIndexOf('/');
+            if (slash < 0) return null;
+            String total = range.substring(slash + 1).trim();
+            if (total.equals("*")) return null;
+            hcon.getInputStream().close();
+            reader = new HttpRangeReader(url, Long.parseLong(total),
+                validator(hcon));
+            return reader;
+        } catch (NumberFormatException ex) {
+            return null;
+        } finally {
+            if (reader == null) hcon.disconnect();
+        }
+    }
+
+    /**
+     * returns the value for an If-Range header that identifies the
+     * version of the file con was answered from, or null if the server
+     * returned neither a strong ETag nor a Last-Modified date.
+     */
+    static String validator(HttpURLConnection con) {
+        String etag = con.getHeaderField("ETag");
+        if ((etag != null) && !etag.startsWith("W/")) return etag;
+        return con.getHeaderField("Last-Modified");
+    }
+
+    long size() {return length;}
+
+    int readChannel(ByteBuffer dst, long position) throws IOException {
+        int start = dst.position();
+        long end = position + dst.remaining();
+        if (end > length) end = length;
+        long lastBlock = (end - 1)/blockSize;
+        long pos = position;
+        while (pos < end) {
+            long block = pos/blockSize;
+            byte [] data;
+            synchronized (blocks) {
+                data = blocks.get(block);
+            }
+            if (data != null) {
+                pos += copy(data, block, pos, end, dst);
+                continue;
+            }
+            long last = block;
+            long limit = lastBlock + readAhead;
+            long maxBlock = (length - 1)/blockSize;
+            if (limit > maxBlock) limit = maxBlock;
+            synchronized (blocks) {
+                while ((last < limit) && !blocks.containsKey(last + 1)) last++;
+            }
+            byte [][] fetched = fetch(block, last);
+            for (int i = 0; i < fetched.length; i++) {
+                if (pos >= end) break;
+                pos += copy(fetched[i], block + i, pos, end, dst);
+            }
+        }
+        return dst.position() - start;
+    }
+
+    int copy(byte [] data, long block, long pos, long end, ByteBuffer dst) {
+        int off = (int)(pos - block*blockSize);
+        int n = data.length - off;
+        if (n > (end - pos)) n = (int)(end - pos);
+        dst.put(data, off, n);
+        return n;
+    }
+
+    /**
+     * fetches blocks first through last with one request and adds them
+     * to the cache.
+     */
+    byte [][] fetch(long first, long last) throws IOException {
+        long from = first*blockSize;
+        long to = (last + 1)*blockSize;
+        if (to > length) to = length;
+        HttpURLConnection con =
+            (HttpURLConnection)new CDFUrl(url).openConnection();
+        con.setRequestProperty("Range", "bytes=" + from + "-" + (to - 1));
+        con.setRequestProperty("Accept-Encoding", "identity");
+        if (validator != null) con.setRequestProperty("If-Range", validator);
+        byte [][] fetched = new byte[(int)(last - first + 1)][];
+        InputStream is = null;
+        try {
+            int code = con.getResponseCode();
+            if (code != HttpURLConnection.HTTP_PARTIAL) {
+                con.disconnect();
+                if (code == HttpURLConnection.HTTP_OK) {
+                    throw new IOException(url + " has changed since it " +
+                        "was opened");
+                }
+                throw new IOException("Range request to " + url +
+                    " returned " + code);
+            }
+            is = con.getInputStream();
+            for (int i = 0; i < fetched.length; i++) {
+                long bstart = from + (long)i*blockSize;
+                int size = blockSize;
+                if ((bstart + size) > to) size = (int)(to - bstart);
+                byte [] ba = new byte[size];
+                int off = 0;
+                while (off < size) {
+                    int got = is.read(ba, off, size - off);
+                    if (got < 0) {
+                        throw new EOFException("Premature end of data from "
+                            + url);
+                    }
+                    off += got;
+                }
+                fetched[i] = ba;
+            }
+        } finally {
+            if (is != null) is.close();
+        }
+        synchronized (blocks) {
+            requests++;
+            for (int i = 0; i < fetched.length; i++) {
+                blocks.put(first + i, fetched[i]);
+            }
+        }
+        return fetched;
+    }
+}
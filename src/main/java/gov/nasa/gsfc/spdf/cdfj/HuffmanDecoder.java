@@ -0,0 +1,127 @@
+package gov.nasa.gsfc.spdf.cdfj;
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+/**
+ * HuffmanDecoder decodes records compressed with static Huffman coding.
+ * The compressed data begins with the scaled symbol counts, written as
+ * runs of first symbol, last symbol and one count byte per symbol, and
+ * terminated by a zero first symbol. The tree is rebuilt from the
+ * counts exactly as the encoder built it, and the codes that follow are
+ * decoded until the end of stream symbol, through a lookup table for
+ * the shorter codes.
+ * Decoders are kept per thread, so decoding does not allocate.
+ */
+final class HuffmanDecoder {
+    static final int END_OF_STREAM = 256;
+    static final int NODES = 514;
+    static final int TABLE_BITS = 10;
+    static final ThreadLocal<HuffmanDecoder> decoders =
+        new ThreadLocal<HuffmanDecoder>() {
+        protected HuffmanDecoder initialValue() {
+            return new HuffmanDecoder();
+        }
+    };
+    final int [] count = new int[NODES];
+    final int [] child0 = new int[NODES];
+    final int [] child1 = new int[NODES];
+    final int [] table = new int[1 << TABLE_BITS];
+    final BlockDecoder.BitInput in = new BlockDecoder.BitInput();
+
+    static HuffmanDecoder get() {
+        return decoders.get();
+    }
+
+    int decode(ByteBuffer src, byte [] dst) throws IOException {
+        readCounts(src);
+        int root = buildTree();
+        in.reset(src);
+        int n = 0;
+        if (root <= END_OF_STREAM) return n;
+        fillTable(root, 0, 0);
+        while (n < dst.length) {
+            int entry = table[in.peek(TABLE_BITS)];
+            int node;
+            if (entry >= 0) {
+                in.skip(entry & 0xff);
+                node = entry >> 8;
+            } else {
+                in.skip(TABLE_BITS);
+                node = -entry;
+                do {
+                    node = (in.bit() == 0)?child0[node]:child1[node];
+                } while (node > END_OF_STREAM);
+            }
+            if (node == END_OF_STREAM) break;
+            dst[n++] = (byte)node;
+        }
+        return n;
+    }
+
+    /**
+     * fills the lookup table for the subtree at node, whose code has the
+     * given length. Symbols with codes of up to TABLE_BITS bits are
+     * decoded by a single lookup. Entries for longer codes hold the
+     * negated internal node reached after TABLE_BITS bits.
+     */
+    void fillTable(int node, int code, int length) {
+        if (node <= END_OF_STREAM) {
+            int shift = TABLE_BITS - length;
+            int entry = (node << 8) | length;
+            Arrays.fill(table, code << shift, (code + 1) << shift, entry);
+            return;
+        }
+        if (length == TABLE_BITS) {
+            table[code] = -node;
+            return;
+        }
+        fillTable(child0[node], code << 1, length + 1);
+        fillTable(child1[node], (code << 1) | 1, length + 1);
+    }
+
+    void readCounts(ByteBuffer src) throws IOException {
+        Arrays.fill(count, 0);
+        try {
+            int first = src.get() & 0xff;
+            int last = src.get() & 0xff;
+            for (;;) {
+                for (int i = first; i <= last; i++) count[i] = src.get() & 0xff;
+                first = src.get() & 0xff;
+                if (first == 0) break;
+                last = src.get() & 0xff;
+            }
+        } catch (BufferUnderflowException ex) {
+            throw new EOFException("Truncated Huffman counts");
+        }
+        count[END_OF_STREAM] = 1;
+    }
+
+    /**
+     * builds the tree by repeatedly joining the two nodes of least
+     * count. returns the root.
+     */
+    int buildTree() {
+        count[NODES - 1] = 0xffff;
+        int next = END_OF_STREAM + 1;
+        for (;; next++) {
+            int min1 = NODES - 1;
+            int min2 = NODES - 1;
+            for (int i = 0; i < next; i++) {
+                if (count[i] == 0) continue;
+                if (count[i] < count[min1]) {
+                    min2 = min1;
+                    min1 = i;
+                } else if (count[i] < count[min2]) {
+                    min2 = i;
+                }
+            }
+            if (min2 == (NODES - 1)) break;
+            count[next] = count[min1] + count[min2];
+            count[min1] = 0;
+            count[min2] = 0;
+            child0[next] = min1;
+            child1[next] = min2;
+        }
+        return next - 1;
+    }
+}
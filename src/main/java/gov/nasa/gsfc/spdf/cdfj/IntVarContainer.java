@@ -32,15 +32,9 @@ public final class IntVarContainer extends BaseVarContainer implements
         return new int[size];
     }
 
-    void doMissing(int records, ByteBuffer _buf, Object _data, int rec) {
+    void doMissing(int records, ByteBuffer _buf, Object _data) {
         int[] data = (int[])_data;
-        int[] repl = null;
-        try {
-            repl = (rec < 0)?ipad:var.asIntArray(new int[]{rec});
-        } catch(Throwable th) {
-            th.printStackTrace();
-            System.out.println("Should not see this.");
-        }
+        int[] repl = ipad;
         int position = _buf.position();
         IntBuffer ibuf = _buf.asIntBuffer();
         int rem = records;
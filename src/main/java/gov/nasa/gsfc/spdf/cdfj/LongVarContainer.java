@@ -34,15 +34,9 @@ public final class LongVarContainer extends BaseVarContainer implements
         return new long[size];
     }
 
-    void doMissing(int records, ByteBuffer _buf, Object _data, int rec) {
+    void doMissing(int records, ByteBuffer _buf, Object _data) {
         long[] data = (long[])_data;
-        long[] repl = null;
-        try {
-            repl = (rec < 0)?lpad:var.asLongArray(new int[]{rec});
-        } catch(Throwable th) {
-            th.printStackTrace();
-            System.out.println("Should not see this.");
-        }
+        long[] repl = lpad;
         int position = _buf.position();
         LongBuffer lbuf = _buf.asLongBuffer();
         int rem = records;
@@ -70,35 +64,15 @@ public final class LongVarContainer extends BaseVarContainer implements
         long[] data = (long[])_data;
         int position = _buf.position();
         LongBuffer lbuf = _buf.asLongBuffer();
-        Method method;
         int processed = 0;
         switch (DataTypes.typeCategory[type]) {
         case 2:
-            method = DataTypes.method[type];
-            while (processed < toprocess) {
-                int _num = (toprocess - processed)*elements;
-                if (_num > data.length) _num = data.length;
-                for (int e = 0; e < _num; e++) {
-                    Number num = (Number)method.invoke(bv, new Object[] {});
-                    data[e] = num.longValue();
-                }
-                lbuf.put(data, 0, _num);
-                position += 8*_num;
-                processed += (_num/elements);
-            }
-            _buf.position(position);
-            break;
         case 3:
-            method = DataTypes.method[type];
-            long longInt = DataTypes.longInt[type];
+            DecodeKernel kernel = DecodeKernel.get(type);
             while (processed < toprocess) {
                 int _num = (toprocess - processed)*elements;
                 if (_num > data.length) _num = data.length;
-                for (int e = 0; e < _num; e++) {
-                    Number num = (Number)method.invoke(bv, new Object[] {});
-                    int x = num.intValue();
-                    data[e] = (x >= 0)?(long)x:(long)(longInt + x);
-                }
+                kernel.toLong(bv, data, 0, _num);
                 lbuf.put(data, 0, _num);
                 position += 8*_num;
                 processed += (_num/elements);
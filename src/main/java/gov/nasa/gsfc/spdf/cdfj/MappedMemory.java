@@ -0,0 +1,181 @@
+package gov.nasa.gsfc.spdf.cdfj;
+import java.lang.ref.*;
+import java.lang.reflect.*;
+import java.nio.*;
+import java.util.*;
+/**
+ * MappedMemory keeps account of the files mapped by CDFFactory and
+ * unmaps them deterministically, without relying on garbage collection.
+ * Each mapping has a count of users. A mapping whose users have all
+ * released it, but which was not unmapped at release, is idle. When the
+ * mapped memory exceeds the budget, idle mappings are unmapped in least
+ * recently released order. A mapping in use is never unmapped.
+ * Mappings of CDFs that are garbage collected without being closed are
+ * dropped from the account.
+ */
+final class MappedMemory {
+    static final ReferenceQueue<CDFImpl> queue = new ReferenceQueue<CDFImpl>();
+    static final Set<Entry> live = new HashSet<Entry>();
+    static long mapped;
+    static long unmapped;
+
+    private MappedMemory() {
+    }
+
+    /**
+     * registers the mapping of buffers by cdf, with one user.
+     */
+    static synchronized void register(CDFImpl cdf, ByteBuffer[] buffers,
+        long size) {
+        expunge();
+        Entry e = new Entry(cdf, buffers, size);
+        cdf.mapping = e;
+        live.add(e);
+        mapped += size;
+    }
+
+    /**
+     * adds a user of the mapping of cdf. returns false if the mapping
+     * has been unmapped.
+     */
+    static synchronized boolean acquire(CDFImpl cdf) {
+        Entry e = find(cdf);
+        if (e == null) return false;
+        e.users++;
+        return true;
+    }
+
+    /**
+     * removes a user of the mapping of cdf. If no users remain, the
+     * mapping is unmapped if unmap is true, or was true for an earlier
+     * release, and becomes idle otherwise.
+     */
+    static synchronized void release(CDFImpl cdf, boolean unmap) {
+        Entry e = find(cdf);
+        if (e == null) return;
+        if (e.users > 0) e.users--;
+        e.released = System.nanoTime();
+        if (unmap) e.unmap = true;
+        if (e.users > 0) return;
+        if (e.unmap) unmap(e);
+    }
+
+    /**
+     * unmaps the mapping of cdf if it is idle.
+     */
+    static synchronized void unmapIdle(CDFImpl cdf) {
+        Entry e = find(cdf);
+        if ((e != null) && (e.users == 0)) unmap(e);
+    }
+
+    /**
+     * unmaps idle mappings, least recently released first, until no more
+     * than budget bytes are mapped.
+     */
+    static synchronized void evict(long budget) {
+        expunge();
+        if (mapped <= budget) return;
+        Vector<Entry> idle = new Vector<Entry>();
+        for (Entry e : live) {
+            if (e.users == 0) idle.add(e);
+        }
+        Collections.sort(idle, new Comparator<Entry>() {
+            public int compare(Entry a, Entry b) {
+                return Long.compare(a.released, b.released);
+            }
+        });
+        for (int i = 0; (i < idle.size()) && (mapped > budget); i++) {
+            unmap(idle.get(i));
+        }
+    }
+
+    /**
+     * returns number of bytes currently mapped.
+     */
+    static synchronized long mappedBytes() {
+        expunge();
+        return mapped;
+    }
+
+    /**
+     * returns number of mappings currently in effect.
+     */
+    static synchronized int mappings() {
+        expunge();
+        return live.size();
+    }
+
+    /**
+     * returns number of bytes unmapped so far by release or eviction.
+     */
+    static synchronized long unmappedBytes() {
+        return unmapped;
+    }
+
+    static Entry find(CDFImpl cdf) {
+        Entry e = cdf.mapping;
+        if ((e == null) || !live.contains(e)) return null;
+        return e;
+    }
+
+    static void unmap(Entry e) {
+        live.remove(e);
+        mapped -= e.size;
+        unmapped += e.size;
+        CDFImpl cdf = e.get();
+        if (cdf != null) cdf.unmapped();
+        for (int i = 0; i < e.buffers.length; i++) unmap(e.buffers[i]);
+        e.buffers = null;
+        e.clear();
+    }
+
+    static void expunge() {
+        Reference<? extends CDFImpl> ref;
+        while ((ref = queue.poll()) != null) {
+            Entry e = (Entry)ref;
+            if (live.remove(e)) mapped -= e.size;
+            e.buffers = null;
+        }
+    }
+
+    /**
+     * releases the memory mapped by buf, which must not be used
+     * afterwards.
+     */
+    static void unmap(ByteBuffer buf) {
+        if ((buf == null) || !buf.isDirect()) return;
+        try {
+            Class<?> uclass = Class.forName("sun.misc.Unsafe");
+            Field f = uclass.getDeclaredField("theUnsafe");
+            f.setAccessible(true);
+            Method clean = uclass.getMethod("invokeCleaner", ByteBuffer.class);
+            clean.invoke(f.get(null), buf);
+            return;
+        } catch (NoSuchMethodException ex) {
+        } catch (Throwable th) {
+            return;
+        }
+        try { // before Java 9
+            Method m = buf.getClass().getMethod("cleaner");
+            m.setAccessible(true);
+            Object cleaner = m.invoke(buf);
+            if (cleaner != null) {
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        } catch (Throwable th) {
+        }
+    }
+
+    static class Entry extends WeakReference<CDFImpl> {
+        ByteBuffer[] buffers;
+        final long size;
+        int users = 1;
+        long released;
+        boolean unmap;
+        Entry(CDFImpl cdf, ByteBuffer[] buffers, long size) {
+            super(cdf, queue);
+            this.buffers = buffers;
+            this.size = size;
+        }
+    }
+}
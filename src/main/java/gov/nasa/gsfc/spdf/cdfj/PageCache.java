@@ -0,0 +1,134 @@
+package gov.nasa.gsfc.spdf.cdfj;
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+/**
+ * PageCache is a size bounded, least recently used cache of fixed size,
+ * page aligned, direct buffers holding the contents of channel backed
+ * CDF sources. A single instance is shared by all ChannelReaders.
+ * Buffers of evicted pages are reused for new pages, so the off-heap
+ * footprint does not grow beyond the configured capacity.
+ */
+final class PageCache {
+    static final int DEFAULT_PAGE_SIZE = 64*1024;
+    final int pageSize;
+    final long capacity;
+    final LinkedHashMap<Key, ByteBuffer> pages =
+        new LinkedHashMap<Key, ByteBuffer>(16, 0.75f, true);
+    long cached;
+    long hits;
+    long misses;
+
+    PageCache(long capacity, int pageSize) {
+        this.capacity = capacity;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * reads from position until dst is full or end of source is reached,
+     * using cached pages where available.
+     * returns number of bytes read.
+     */
+    int read(ChannelReader reader, ByteBuffer dst, long position)
+        throws IOException {
+        int start = dst.position();
+        while (dst.hasRemaining()) {
+            long pos = position + dst.position() - start;
+            long page = pos/pageSize;
+            int off = (int)(pos - page*pageSize);
+            Key key = new Key(reader, page);
+            synchronized (this) {
+                ByteBuffer _buf = pages.get(key);
+                if (_buf != null) {
+                    hits++;
+                    if (copy(_buf, off, dst) == 0) break;
+                    continue;
+                }
+                misses++;
+            }
+            ByteBuffer _buf = load(reader, page);
+            synchronized (this) {
+                ByteBuffer old = pages.put(key, _buf);
+                if (old != null) cached -= pageSize;
+                if (copy(_buf, off, dst) == 0) break;
+            }
+        }
+        return dst.position() - start;
+    }
+
+    /**
+     * returns a buffer, not yet in the cache, filled with the given page.
+     */
+    ByteBuffer load(ChannelReader reader, long page) throws IOException {
+        ByteBuffer _buf = null;
+        synchronized (this) {
+            if ((cached + pageSize) > capacity) {
+                Iterator<Map.Entry<Key, ByteBuffer>> it =
+                    pages.entrySet().iterator();
+                if (it.hasNext()) {
+                    _buf = it.next().getValue();
+                    it.remove();
+                    cached -= pageSize;
+                }
+            }
+            cached += pageSize;
+        }
+        if (_buf == null) _buf = ByteBuffer.allocateDirect(pageSize);
+        _buf.clear();
+        try {
+            reader.readChannel(_buf, page*pageSize);
+        } catch (IOException ex) {
+            synchronized (this) {
+                cached -= pageSize;
+            }
+            throw ex;
+        }
+        _buf.flip();
+        return _buf;
+    }
+
+    static int copy(ByteBuffer page, int off, ByteBuffer dst) {
+        int n = page.limit() - off;
+        if (n <= 0) return 0;
+        if (n > dst.remaining()) n = dst.remaining();
+        ByteBuffer _buf = page.duplicate();
+        _buf.position(off);
+        _buf.limit(off + n);
+        dst.put(_buf);
+        return n;
+    }
+
+    /**
+     * removes the pages of reader.
+     */
+    synchronized void remove(ChannelReader reader) {
+        Iterator<Key> it = pages.keySet().iterator();
+        while (it.hasNext()) {
+            if (it.next().reader != reader) continue;
+            it.remove();
+            cached -= pageSize;
+        }
+    }
+
+    synchronized void clear() {
+        pages.clear();
+        cached = 0;
+    }
+
+    static class Key {
+        final ChannelReader reader;
+        final long page;
+        Key(ChannelReader reader, long page) {
+            this.reader = reader;
+            this.page = page;
+        }
+        public int hashCode() {
+            return System.identityHashCode(reader)*31 + (int)(page^(page>>>32));
+        }
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key k = (Key)o;
+            return (k.reader == reader) && (k.page == page);
+        }
+    }
+}
@@ -0,0 +1,368 @@
+package gov.nasa.gsfc.spdf.cdfj;
+import java.nio.*;
+import java.util.*;
+import java.util.concurrent.*;
+/**
+ * Prefetcher reads ahead the blocks of a variable whose values are being
+ * read in block order, either by a single read spanning several blocks
+ * or by reads of consecutive blocks. The next window blocks of the
+ * variable's locator are read by daemon threads: records of files read
+ * through a channel are kept until the reader takes them, and pages of
+ * mapped files are touched so that they are resident when read.
+ * Blocks of compressed variables may also be decompressed ahead into
+ * the block cache.
+ * A prefetched block taken by the reader is counted as useful. A block
+ * that was read ahead but dropped, because too many are pending, the
+ * scan that asked for it reached the last block without it, read ahead
+ * was disabled, or its CDF was closed, is counted as wasted.
+ * The read state of each CDF is weakly held, so that a CDF that is not
+ * closed does not stay reachable through it.
+ */
+final class Prefetcher {
+    static final int PAGE = 4096;
+    static final int THREADS = 2;
+    static final int MIN_PENDING = 64;
+    static volatile int window;
+    static volatile boolean decompress;
+    static ExecutorService executor;
+    static final LinkedHashMap<BlockCache.Key, Entry> pending =
+        new LinkedHashMap<BlockCache.Key, Entry>();
+    static volatile int held;
+    static final WeakHashMap<CDFImpl, Hashtable<String, Scan>> scans =
+        new WeakHashMap<CDFImpl, Hashtable<String, Scan>>();
+    static long useful;
+    static long wasted;
+    static volatile int sink;
+
+    private Prefetcher() {
+    }
+
+    /**
+     * sets the number of blocks read ahead, and whether blocks of
+     * compressed variables are decompressed ahead. 0 disables read ahead,
+     * and drops the blocks pending.
+     */
+    static synchronized void configure(int blocks, boolean _decompress) {
+        decompress = _decompress;
+        window = (blocks < 0)?0:blocks;
+        if ((window > 0) && (executor == null)) {
+            executor = Executors.newFixedThreadPool(THREADS,
+                new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "cdfj-prefetch");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        }
+        if ((window == 0) && (executor != null)) {
+            executor.shutdown();
+            executor = null;
+        }
+        if (window == 0) {
+            Vector<Entry> dropped;
+            synchronized (pending) {
+                dropped = new Vector<Entry>(pending.values());
+                pending.clear();
+                held = 0;
+            }
+            drop(dropped);
+            synchronized (scans) {
+                scans.clear();
+            }
+        }
+    }
+
+    /**
+     * notes that block blk of the locations of var is about to be read,
+     * by a read that extends to block lastBlk, and reads ahead if the
+     * blocks of var are being read in order. The read state of var is
+     * dropped when its last block is read, along with the blocks read
+     * ahead for it that the scan passed by.
+     */
+    static void access(CDFImpl cdf, Variable var, Vector<?> locations,
+        int blk, int lastBlk) {
+        int k = window;
+        if (k <= 0) return;
+        if ((cdf.reader == null) && (cdf.mapping == null) &&
+            !(decompress && var.isCompressed())) return; // in memory
+        String key = var.getName();
+        int from;
+        int to;
+        synchronized (scans) {
+            Hashtable<String, Scan> vars = scans.get(cdf);
+            if (vars == null) {
+                vars = new Hashtable<String, Scan>();
+                scans.put(cdf, vars);
+            }
+            if (blk == (locations.size() - 1)) {
+                if (vars.remove(key) == null) return;
+                if (vars.isEmpty()) scans.remove(cdf);
+                finish(cdf, var, ((long [])locations.elementAt(blk))[2]);
+                return;
+            }
+            Scan s = vars.get(key);
+            if (s == null) {
+                s = new Scan();
+                vars.put(key, s);
+            }
+            boolean sequential = (lastBlk > blk) || (blk == (s.last + 1));
+            s.last = blk;
+            if (!sequential) {
+                s.through = blk;
+                return;
+            }
+            from = (s.through < blk)?blk + 1:s.through + 1;
+            to = blk + k;
+            if (to >= locations.size()) to = locations.size() - 1;
+            if (to > s.through) s.through = to;
+        }
+        ExecutorService ex = executor;
+        if (ex == null) return;
+        for (int b = from; b <= to; b++) {
+            issue(ex, new Entry(cdf, var, (long [])locations.elementAt(b)));
+        }
+    }
+
+    /**
+     * drops the blocks of var read ahead for cdf, other than the one at
+     * offset, once the scan of var has reached its last block at offset.
+     */
+    static void finish(CDFImpl cdf, Variable var, long offset) {
+        Vector<Entry> dropped = new Vector<Entry>();
+        synchronized (pending) {
+            if (pending.isEmpty()) return;
+            Iterator<Entry> it = pending.values().iterator();
+            while (it.hasNext()) {
+                Entry e = it.next();
+                if ((e.cdf != cdf) || (e.var != var) || (e.loc[2] == offset)) {
+                    continue;
+                }
+                dropped.add(e);
+                it.remove();
+            }
+            held = pending.size();
+        }
+        drop(dropped);
+    }
+
+    static void issue(ExecutorService ex, Entry e) {
+        BlockCache.Key key = new BlockCache.Key(e.cdf.blockCacheId, e.loc[2]);
+        Vector<Entry> dropped = new Vector<Entry>();
+        synchronized (pending) {
+            if (pending.containsKey(key)) return;
+            pending.put(key, e);
+            int max = 4*window;
+            if (max < MIN_PENDING) max = MIN_PENDING;
+            Iterator<Entry> it = pending.values().iterator();
+            while ((pending.size() > max) && it.hasNext()) {
+                dropped.add(it.next());
+                it.remove();
+            }
+            held = pending.size();
+        }
+        drop(dropped);
+        try {
+            ex.execute(e);
+        } catch (RejectedExecutionException rex) { // read ahead disabled
+            synchronized (pending) {
+                pending.remove(key);
+                held = pending.size();
+            }
+            e.claim();
+        }
+    }
+
+    /**
+     * returns the record at offset of cdf if it has been read ahead, or
+     * null if it was not, or is not held because the file is mapped.
+     * Waits for a read ahead in progress to complete. Returns at once,
+     * without locking, if no block is pending, as when read ahead is
+     * disabled.
+     */
+    static ByteBuffer take(CDFImpl cdf, long offset) {
+        if (held == 0) return null;
+        Entry e;
+        synchronized (pending) {
+            if (pending.isEmpty()) return null;
+            e = pending.remove(new BlockCache.Key(cdf.blockCacheId, offset));
+            held = pending.size();
+        }
+        if ((e == null) || !e.claim()) return null;
+        ByteBuffer record = e.await();
+        if (e.ok) {
+            synchronized (pending) {
+                useful++;
+            }
+        }
+        return record;
+    }
+
+    /**
+     * drops the blocks read ahead for cdf, and its read state.
+     */
+    static void remove(CDFImpl cdf) {
+        Vector<Entry> dropped = new Vector<Entry>();
+        synchronized (pending) {
+            if (!pending.isEmpty()) {
+                Iterator<Entry> it = pending.values().iterator();
+                while (it.hasNext()) {
+                    Entry e = it.next();
+                    if (e.cdf != cdf) continue;
+                    dropped.add(e);
+                    it.remove();
+                }
+                held = pending.size();
+            }
+        }
+        drop(dropped);
+        synchronized (scans) {
+            scans.remove(cdf);
+        }
+    }
+
+    static void drop(Vector<Entry> dropped) {
+        int n = 0;
+        for (int i = 0; i < dropped.size(); i++) {
+            if (dropped.get(i).claim()) n++;
+        }
+        if (n == 0) return;
+        synchronized (pending) {
+            wasted += n;
+        }
+    }
+
+    static long getUseful() {
+        synchronized (pending) {
+            return useful;
+        }
+    }
+
+    static long getWasted() {
+        synchronized (pending) {
+            return wasted;
+        }
+    }
+
+    /**
+     * touches the pages of the record at the position of buf, whose
+     * length is size.
+     */
+    static void touch(ByteBuffer buf, long size) {
+        int limit = buf.limit();
+        if (size < (limit - buf.position())) limit = buf.position() + (int)size;
+        int sum = 0;
+        for (int i = buf.position(); i < limit; i += PAGE) sum += buf.get(i);
+        sink = sum;
+    }
+
+    /**
+     * Scan holds the last block read, and the last block read ahead, of
+     * a variable.
+     */
+    static class Scan {
+        int last = -2;
+        int through = -1;
+    }
+
+    /**
+     * Entry reads ahead a block. An entry claimed before it starts is
+     * not read.
+     */
+    static class Entry implements Runnable {
+        static final int QUEUED = 0;
+        static final int RUNNING = 1;
+        static final int DONE = 2;
+        static final int CANCELLED = 3;
+        final CDFImpl cdf;
+        final Variable var;
+        final long [] loc;
+        int state = QUEUED;
+        boolean ok;
+        ByteBuffer record;
+
+        Entry(CDFImpl cdf, Variable var, long [] loc) {
+            this.cdf = cdf;
+            this.var = var;
+            this.loc = loc;
+        }
+
+        public void run() {
+            synchronized (this) {
+                if (state != QUEUED) return;
+                state = RUNNING;
+            }
+            boolean _ok = false;
+            try {
+                if (!cdf.closed) _ok = fetch();
+            } catch (Throwable th) {
+                _ok = false;
+            }
+            synchronized (this) {
+                if (!_ok) record = null;
+                ok = _ok;
+                state = DONE;
+                notifyAll();
+            }
+        }
+
+        /**
+         * reads ahead the block. returns false if it could not be read.
+         */
+        boolean fetch() {
+            long offset = loc[2];
+            boolean decode = decompress && var.isCompressed() &&
+                (CDFFactory.blockCache != null);
+            if (cdf.reader != null) {
+                if (decode) return decode();
+                ByteBuffer bv = cdf.getRecord(offset);
+                synchronized (this) {
+                    record = bv;
+                }
+                return (bv != null);
+            }
+            boolean mapped = (cdf.mapping != null);
+            if (mapped && !MappedMemory.acquire(cdf)) return false;
+            try {
+                if (decode) return decode();
+                if (mapped) {
+                    ByteBuffer bv = cdf.getRecord(offset);
+                    touch(bv, cdf.longInt(bv.duplicate()));
+                }
+            } finally {
+                if (mapped) MappedMemory.release(cdf, false);
+            }
+            return true;
+        }
+
+        boolean decode() {
+            int count = (int)(loc[1] - loc[0] + 1);
+            return (cdf.getValueBuffer(null, loc[2], var.getDataItemSize(),
+                count, var.getCompressionType(), count) != null);
+        }
+
+        /**
+         * claims the entry for the reader. returns false if it had not
+         * started, in which case it will not be read.
+         */
+        synchronized boolean claim() {
+            if (state != QUEUED) return true;
+            state = CANCELLED;
+            return false;
+        }
+
+        synchronized ByteBuffer await() {
+            while (state == RUNNING) {
+                try {
+                    wait();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+            ByteBuffer _record = record;
+            record = null;
+            return _record;
+        }
+    }
+}
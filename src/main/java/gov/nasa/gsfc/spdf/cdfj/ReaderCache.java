@@ -0,0 +1,138 @@
+package gov.nasa.gsfc.spdf.cdfj;
+import java.io.*;
+import java.util.*;
+/**
+ * ReaderCache shares one CDFImpl among all readers of the same file, so
+ * that the file is mapped and its metadata parsed once rather than once
+ * per reader. Files are identified by canonical path, size and
+ * modification time, so a file that changes is opened afresh.
+ * Each CDFImpl is reference counted. Once all readers have released it,
+ * it stays in the cache for the idle timeout, and is dropped thereafter.
+ * A dropped CDFImpl is unmapped if unmapping on close is enabled, and is
+ * otherwise left to the garbage collector or the mapped memory budget.
+ */
+final class ReaderCache {
+    static final Hashtable<String, Entry> entries = new Hashtable<String, Entry>();
+    static long timeout;
+    static Timer timer;
+
+    private ReaderCache() {
+    }
+
+    /**
+     * sets the idle timeout in milliseconds. 0 disables the cache and
+     * unmaps the idle CDFs in it.
+     */
+    static synchronized void setTimeout(long millis) {
+        timeout = millis;
+        if (timer != null) {
+            timer.cancel();
+            timer = null;
+        }
+        if (millis <= 0) {
+            expire(Long.MAX_VALUE);
+            return;
+        }
+        timer = new Timer("cdfj-reader-cache", true);
+        long period = Math.max(millis/2, 1);
+        timer.schedule(new TimerTask() {
+            public void run() {
+                expire(System.currentTimeMillis() - timeout);
+            }
+        }, period, period);
+    }
+
+    static synchronized boolean enabled() {
+        return timeout > 0;
+    }
+
+    /**
+     * returns the shared CDFImpl for the given file, opening it if
+     * necessary.
+     */
+    static CDFImpl acquire(String fname, boolean option) throws Throwable {
+        File file = new File(fname).getCanonicalFile();
+        String key = file.getPath() + "|" + file.length() + "|" +
+            file.lastModified() + "|" + option;
+        synchronized (ReaderCache.class) {
+            Entry e = entries.get(key);
+            if (e != null) {
+                if (MappedMemory.acquire(e.cdf)) {
+                    e.refs++;
+                    return e.cdf;
+                }
+                entries.remove(key);
+            }
+        }
+        CDFImpl cdf = CDFFactory.getCDF(fname, option);
+        synchronized (ReaderCache.class) {
+            Entry e = entries.get(key);
+            if ((e != null) && MappedMemory.acquire(e.cdf)) {
+                e.refs++;
+                MappedMemory.release(cdf, true);
+                return e.cdf;
+            }
+            cdf.cacheKey = key;
+            entries.put(key, new Entry(cdf));
+            return cdf;
+        }
+    }
+
+    /**
+     * releases one reference to cdf.
+     */
+    static synchronized void release(CDFImpl cdf) {
+        Entry e = entries.get(cdf.cacheKey);
+        boolean unmap = CDFFactory.unmapOnClose;
+        if ((e == null) || (e.cdf != cdf)) {
+            MappedMemory.release(cdf, unmap);
+            if (!unmap) cdf.dispose();
+            return;
+        }
+        if (e.refs > 0) e.refs--;
+        if (e.refs == 0) e.idleSince = System.currentTimeMillis();
+        MappedMemory.release(cdf, unmap && (timeout <= 0));
+        if ((timeout <= 0) && (e.refs == 0)) {
+            entries.remove(cdf.cacheKey);
+            if (!unmap) cdf.dispose();
+        }
+    }
+
+    /**
+     * unmaps CDFs that have been idle since before the given time.
+     */
+    static synchronized void expire(long time) {
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry e = it.next();
+            if (e.cdf.closed) {
+                it.remove();
+                continue;
+            }
+            if ((e.refs == 0) && (e.idleSince < time)) {
+                it.remove();
+                if (CDFFactory.unmapOnClose) {
+                    MappedMemory.unmapIdle(e.cdf);
+                } else {
+                    e.cdf.dispose();
+                }
+            }
+        }
+    }
+
+    /**
+     * returns number of CDFs in the cache.
+     */
+    static synchronized int size() {
+        return entries.size();
+    }
+
+    static class Entry {
+        final CDFImpl cdf;
+        int refs = 1;
+        long idleSince;
+        Entry(CDFImpl cdf) {
+            this.cdf = cdf;
+        }
+    }
+}
@@ -3,16 +3,21 @@ import java.nio.*;
 import java.nio.channels.*;
 import java.io.*;
 import java.net.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
 /**
  * ReaderFactory creates an instance of CDFReader from a CDF source.
  * Uses array backed ByteBuffer for CDFReader.
- * The source CDF can  be a file,  or a URL.
+ * The source CDF can  be a file, a URL, or any SeekableByteChannel.
  */
 public final class ReaderFactory {
     /**
      * creates  CDFReader object from a file using array backed ByteBuffer.
      */
     static int preamble = 3000;
+    static volatile PageCache pageCache;
+    static volatile boolean rangeRequests = true;
     public static CDFReader getReader(String fname) throws
         CDFException.ReaderError {
         CDFImpl cdf = null;
@@ -24,7 +29,12 @@ public final class ReaderFactory {
             byte[] ba = new byte[(int)len];
             raf.readFully(ba);
             ByteBuffer buf = ByteBuffer.wrap(ba);
-            cdf = getVersion(buf, raf.getChannel());
+            if (CDFFactory.compressedVersion(buf) != 0) {
+                raf.close();
+                cdf = CDFFactory.getCDF(fname, false);
+            } else {
+                cdf = getVersion(buf, new FileChannelReader(raf.getChannel()));
+            }
         } catch (Throwable th) {
             throw new CDFException.ReaderError("I/O Error reading " + fname);
         }
@@ -39,25 +49,134 @@ public final class ReaderFactory {
     }
 
     /**
-     * creates  CDFReader object from a URL using array backed ByteBuffer.
+     * creates  CDFReader object that reads the given channel on demand,
+     * as by {@link CDFFactory#getCDF(SeekableByteChannel, String)}.
+     * The reader takes ownership of the channel, which is closed when the
+     * reader is closed, or at once if the channel does not hold a CDF or
+     * cannot be read. name is reported as the source of the reader.
+     */
+    public static CDFReader getReader(SeekableByteChannel ch, String name)
+        throws CDFException.ReaderError {
+        CDFImpl cdf;
+        try {
+            cdf = CDFFactory.getCDF(ch, name);
+        } catch (CDFException.ReaderError ex) {
+            throw ex;
+        } catch (Throwable th) {
+            throw new CDFException.ReaderError("I/O Error reading " + name +
+                ": " + th);
+        }
+        CDFReader rdr = new CDFReader();
+        rdr.setImpl(cdf);
+        return rdr;
+    }
+
+    /**
+     * creates  CDFReader object that reads the file at the given path on
+     * demand. The path may belong to any file system, including a zip
+     * FileSystem.
+     */
+    public static CDFReader getReader(Path path) throws
+        CDFException.ReaderError {
+        SeekableByteChannel ch;
+        try {
+            ch = Files.newByteChannel(path);
+        } catch (IOException ex) {
+            throw new CDFException.ReaderError("I/O Error reading " + path +
+                ": " + ex);
+        }
+        return getReader(ch, path.toString());
+    }
+
+    /**
+     * opens the given files concurrently, using at most threads threads,
+     * and returns the readers in the order of fnames. Each file is opened
+     * as by {@link CDFReader#CDFReader(String)}.
+     * A file that cannot be opened does not stop the others: its reader
+     * is null, and, if errors is not null, the reason is stored in errors
+     * at the same index.
+     */
+    public static CDFReader[] getReaders(String[] fnames, int threads,
+        CDFException.ReaderError[] errors) {
+        CDFReader[] readers = new CDFReader[fnames.length];
+        if (fnames.length == 0) return readers;
+        if (threads < 1) threads = 1;
+        if (threads > fnames.length) threads = fnames.length;
+        ExecutorService executor = Executors.newFixedThreadPool(threads,
+            new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "cdfj-open");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        Vector<Future<CDFReader>> results = new Vector<Future<CDFReader>>();
+        for (int i = 0; i < fnames.length; i++) {
+            final String fname = fnames[i];
+            results.add(executor.submit(new Callable<CDFReader>() {
+                public CDFReader call() throws CDFException.ReaderError {
+                    return new CDFReader(fname);
+                }
+            }));
+        }
+        executor.shutdown();
+        for (int i = 0; i < fnames.length; i++) {
+            try {
+                readers[i] = results.get(i).get();
+            } catch (ExecutionException ex) {
+                if (errors == null) continue;
+                Throwable cause = ex.getCause();
+                if (cause instanceof CDFException.ReaderError) {
+                    errors[i] = (CDFException.ReaderError)cause;
+                } else {
+                    errors[i] = new CDFException.ReaderError(fnames[i] +
+                        ": " + cause);
+                }
+            } catch (InterruptedException ex) {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+                if (errors != null) {
+                    errors[i] = new CDFException.ReaderError(fnames[i] +
+                        ": interrupted");
+                }
+            }
+        }
+        return readers;
+    }
+
+    /**
+     * creates  CDFReader object from a URL.
+     * If the server supports HTTP range requests, the CDF is read on
+     * demand, and only the parts of the file that are needed are
+     * transferred. Otherwise, or if range requests have been disabled
+     * by {@link #setRangeRequests(boolean)}, the whole file is read into
+     * an array backed ByteBuffer.
      */
     public static CDFReader getReader(URL url) throws
         CDFException.ReaderError {
         CDFImpl cdf = null;
         try {
-            URLConnection con = new CDFUrl(url).openConnection();
-            int remaining = con.getContentLength();
-            InputStream is = con.getInputStream();
-            byte [] ba = new byte[remaining];
-            int offset = 0;
-            while (remaining > 0) {
-                int got = is.read(ba, offset, remaining);
-                offset += got;
-                remaining -= got;
+            if (CDFFactory.urlCache != null) {
+                File file = CDFFactory.urlCache.getFile(url);
+                cdf = CDFFactory.getCDF(file.getPath(), false);
+            } else {
+                cdf = getRemoteVersion(url);
+            }
+            if (cdf == null) {
+                URLConnection con = new CDFUrl(url).openConnection();
+                int remaining = con.getContentLength();
+                InputStream is = con.getInputStream();
+                byte [] ba = new byte[remaining];
+                int offset = 0;
+                while (remaining > 0) {
+                    int got = is.read(ba, offset, remaining);
+                    offset += got;
+                    remaining -= got;
+                }
+                ((HttpURLConnection)con).disconnect();
+                ByteBuffer buf = ByteBuffer.wrap(ba);
+                cdf = CDFFactory.getVersion(buf);
             }
-            ((HttpURLConnection)con).disconnect();
-            ByteBuffer buf = ByteBuffer.wrap(ba);
-            cdf = CDFFactory.getVersion(buf);
         } catch (Throwable th) {
             throw new CDFException.ReaderError("I/O Error reading " + url);
         }
@@ -71,20 +190,33 @@ public final class ReaderFactory {
         return rdr;
     }
 
-    static CDFImpl getVersion(ByteBuffer buf, FileChannel ch) throws
+    /**
+     * returns a CDFImpl that reads the CDF at the given URL on demand
+     * using HTTP range requests, or null if the server does not support
+     * range requests or the CDF is compressed as a whole.
+     */
+    static CDFImpl getRemoteVersion(URL url) throws Throwable {
+        if (!rangeRequests) return null;
+        HttpRangeReader reader = HttpRangeReader.open(url);
+        if (reader == null) return null;
+        int len = preamble;
+        if (reader.size() < len) len = (int)reader.size();
+        ByteBuffer buf = reader.read(0, len);
+        if (buf == null) return null;
+        if (CDFFactory.compressedVersion(buf) != 0) return null;
+        return getVersion(buf, reader);
+    }
+
+    static CDFImpl getVersion(ByteBuffer buf, ChannelReader reader) throws
         Throwable {
         LongBuffer lbuf = buf.asLongBuffer();
         long magic = lbuf.get();
         if (magic == CDFFactory.CDF3_MAGIC) {
-            return new CDF3Impl(buf, ch);
-        }
-        if (magic == CDFFactory.CDF3_COMPRESSED_MAGIC) {
-            ByteBuffer mbuf = CDFFactory.uncompressed(buf, 3);
-            return new CDF3Impl(mbuf);
+            return new CDF3Impl(buf, reader);
         }
         if (magic == CDFFactory.CDF2_MAGIC_DOT5) {
             int release = buf.getInt(24);
-            return new CDF2Impl(buf, release, ch);
+            return new CDF2Impl(buf, release, reader);
         } else {
             ShortBuffer sbuf = buf.asShortBuffer();
             if (sbuf.get() == (short)0xcdf2) {
@@ -92,13 +224,7 @@ public final class ReaderFactory {
                     short x = sbuf.get();
                     if (x == 0) {
                         if (sbuf.get() == -1) {
-                            return new CDF2Impl(buf, 6, ch);
-                        }
-                    } else {
-                        if ((x == (short)0xcccc) && (sbuf.get() == 1)) {
-                            // is compressed - positioned at CCR
-                            ByteBuffer mbuf = CDFFactory.uncompressed(buf, 2);
-                            return new CDF2Impl(mbuf, 6, ch);
+                            return new CDF2Impl(buf, 6, reader);
                         }
                     }
                         
@@ -136,4 +262,103 @@ public final class ReaderFactory {
         rdr.setImpl(cdf);
         return rdr;
     }
+
+    /**
+     * creates  CDFReader object from a byte array.
+     * If copy is false, the array is read in place without copying, and
+     * must not be modified while the reader is in use.
+     * See {@link CDFFactory#getCDF(byte[], boolean)}.
+     */
+    public static CDFReader getReader(byte [] ba, boolean copy) throws
+        CDFException.ReaderError {
+        CDFImpl cdf = null;
+        try {
+            cdf = CDFFactory.getCDF(ba, copy);
+        } catch (Throwable th) {
+            throw new CDFException.ReaderError("Error reading byte array");
+        }
+        if (cdf == null) throw new CDFException.ReaderError("Not a CDF");
+        cdf.setSource(new CDFFactory.CDFSource() {
+            public boolean isByteArray() {return true;};
+        });
+        CDFReader rdr = new CDFReader();
+        rdr.setImpl(cdf);
+        return rdr;
+    }
+
+    /**
+     * creates  CDFReader object from the remaining bytes of a buffer.
+     * If copy is false, the buffer is read in place without copying, and
+     * its contents must not be modified while the reader is in use.
+     * See {@link CDFFactory#getCDF(ByteBuffer, boolean)}.
+     */
+    public static CDFReader getReader(ByteBuffer buf, boolean copy) throws
+        CDFException.ReaderError {
+        CDFImpl cdf = null;
+        try {
+            cdf = CDFFactory.getCDF(buf, copy);
+        } catch (Throwable th) {
+            throw new CDFException.ReaderError("Error reading buffer");
+        }
+        if (cdf == null) throw new CDFException.ReaderError("Not a CDF");
+        cdf.setSource(new CDFFactory.CDFSource() {
+            public boolean isByteBuffer() {return true;};
+        });
+        CDFReader rdr = new CDFReader();
+        rdr.setImpl(cdf);
+        return rdr;
+    }
+
+    /**
+     * sets whether CDFs opened from a URL are read on demand using HTTP
+     * range requests, when the server supports them, rather than read
+     * whole. Range requests are used by default.
+     */
+    public static void setRangeRequests(boolean enable) {
+        rangeRequests = enable;
+    }
+
+    /**
+     * sets the size, in bytes, of the page cache shared by readers
+     * created by {@link #getReader(String)}.
+     * Pages are pageSize bytes long and are allocated off heap.
+     * A size of 0 disables the cache, which is the default.
+     */
+    public static void setPageCache(long size, int pageSize) {
+        if ((size <= 0) || (pageSize <= 0)) {
+            pageCache = null;
+            return;
+        }
+        pageCache = new PageCache(size, pageSize);
+    }
+
+    /**
+     * sets the size, in bytes, of the page cache, using the default
+     * page size of 64 KB.
+     */
+    public static void setPageCache(long size) {
+        setPageCache(size, PageCache.DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * returns number of page cache hits since the cache was configured.
+     */
+    public static long getPageCacheHits() {
+        PageCache cache = pageCache;
+        if (cache == null) return 0;
+        synchronized (cache) {
+            return cache.hits;
+        }
+    }
+
+    /**
+     * returns number of page cache misses since the cache was configured.
+     */
+    public static long getPageCacheMisses() {
+        PageCache cache = pageCache;
+        if (cache == null) return 0;
+        synchronized (cache) {
+            return cache.misses;
+        }
+    }
 }
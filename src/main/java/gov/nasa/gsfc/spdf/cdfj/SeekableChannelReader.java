@@ -0,0 +1,40 @@
+package gov.nasa.gsfc.spdf.cdfj;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+/**
+ * SeekableChannelReader reads from any SeekableByteChannel, such as an
+ * entry of a zip file system or a channel on an object store.
+ * Since the channel has a single position, each read positions the
+ * channel and reads while holding the channel's lock.
+ */
+final class SeekableChannelReader extends ChannelReader {
+    final SeekableByteChannel ch;
+
+    SeekableChannelReader(SeekableByteChannel ch) {
+        this.ch = ch;
+    }
+
+    int readChannel(ByteBuffer dst, long position) throws IOException {
+        int start = dst.position();
+        synchronized (ch) {
+            ch.position(position);
+            while (dst.hasRemaining()) {
+                if (ch.read(dst) < 0) break;
+            }
+        }
+        return dst.position() - start;
+    }
+
+    long size() throws IOException {
+        return ch.size();
+    }
+
+    void close() throws IOException {
+        try {
+            ch.close();
+        } finally {
+            super.close();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package gov.nasa.gsfc.spdf.cdfj;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+/**
+ * SegmentedBuffer maps a file as a sequence of fixed size read only
+ * segments, making files larger than Integer.MAX_VALUE accessible via
+ * mapped buffers and long offsets.
+ * A range that lies within a single segment is returned as a slice
+ * of the mapped segment. A range that spans a segment boundary is
+ * stitched together in a heap buffer.
+ */
+final class SegmentedBuffer {
+    final ByteBuffer[] segments;
+    final long segmentSize;
+    final long size;
+
+    SegmentedBuffer(FileChannel ch, long segmentSize) throws IOException {
+        this.segmentSize = segmentSize;
+        size = ch.size();
+        int n = (int)((size + segmentSize - 1)/segmentSize);
+        segments = new ByteBuffer[n];
+        for (int i = 0; i < n; i++) {
+            long start = i*segmentSize;
+            long len = size - start;
+            if (len > segmentSize) len = segmentSize;
+            segments[i] = ch.map(FileChannel.MapMode.READ_ONLY, start, len);
+        }
+    }
+
+    /**
+     * returns the segment at the given index.
+     */
+    ByteBuffer getSegment(int i) {
+        return segments[i];
+    }
+
+    /**
+     * returns size of the mapped file.
+     */
+    long size() {return size;}
+
+    /**
+     * returns a buffer positioned at 0 containing length bytes starting
+     * at the given file offset. length is truncated at the end of file.
+     */
+    ByteBuffer slice(long offset, int length) {
+        if (offset + length > size) length = (int)(size - offset);
+        int seg = (int)(offset/segmentSize);
+        int pos = (int)(offset - seg*segmentSize);
+        ByteBuffer _buf = segments[seg].duplicate();
+        if (pos + length <= _buf.limit()) {
+            _buf.position(pos);
+            _buf.limit(pos + length);
+            return _buf.slice();
+        }
+        ByteBuffer stitched = ByteBuffer.allocate(length);
+        while (stitched.hasRemaining()) {
+            _buf = segments[seg++].duplicate();
+            _buf.position(pos);
+            if (_buf.remaining() > stitched.remaining()) {
+                _buf.limit(pos + stitched.remaining());
+            }
+            stitched.put(_buf);
+            pos = 0;
+        }
+        stitched.position(0);
+        return stitched;
+    }
+}
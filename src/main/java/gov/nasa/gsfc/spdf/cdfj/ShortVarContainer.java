@@ -32,15 +32,9 @@ public final class ShortVarContainer extends BaseVarContainer implements
         return new short[size];
     }
 
-    void doMissing(int records, ByteBuffer _buf, Object _data, int rec) {
+    void doMissing(int records, ByteBuffer _buf, Object _data) {
         short[] data = (short[])_data;
-        short[] repl = null;
-        try {
-            repl = (rec < 0)?spad:var.asShortArray(new int[]{rec});
-        } catch(Throwable th) {
-            th.printStackTrace();
-            System.out.println("Should not see this.");
-        }
+        short[] repl = spad;
         int position = _buf.position();
         ShortBuffer sbuf = _buf.asShortBuffer();
         int rem = records;
@@ -0,0 +1,191 @@
+package gov.nasa.gsfc.spdf.cdfj;
+import java.io.*;
+import java.nio.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.*;
+/**
+ * SpillFile inflates a CDF that is compressed as a whole into an
+ * uncompressed CDF file, streaming through a small buffer so that
+ * neither the compressed nor the uncompressed data is held on the heap.
+ * Spill files for file sources are kept in the spill directory and
+ * reused while the source file is unchanged. A spill file written for a
+ * changed source replaces those of its earlier versions, and least
+ * recently used spill files are removed while the directory holds more
+ * than the spill capacity.
+ */
+final class SpillFile {
+    static final int BLOCK_SIZE = 64*1024;
+    static final long DEFAULT_CAPACITY = 4L*1024*1024*1024;
+
+    private SpillFile() {
+    }
+
+    /**
+     * returns an uncompressed copy of the compressed CDF in the given
+     * segments. source is the file the segments were mapped from, or
+     * null.
+     */
+    static File get(final SegmentedBuffer segments, int version, File source)
+        throws IOException {
+        ByteBuffer header = segments.slice(0, 64);
+        final long offset = dataOffset(version);
+        Enumeration<InputStream> streams = new Enumeration<InputStream>() {
+            long pos = offset;
+            public boolean hasMoreElements() {
+                return pos < segments.size();
+            }
+            public InputStream nextElement() {
+                long seg = pos/segments.segmentSize;
+                ByteBuffer _buf = segments.getSegment((int)seg).duplicate();
+                _buf.position((int)(pos - seg*segments.segmentSize));
+                pos = (seg + 1)*segments.segmentSize;
+                return new ByteBufferInputStream(_buf);
+            }
+        };
+        return get(new SequenceInputStream(streams), header, version, source);
+    }
+
+    /**
+     * returns an uncompressed copy of the compressed CDF in buf.
+     * source is the file buf was mapped from, or null.
+     */
+    static File get(ByteBuffer buf, int version, File source)
+        throws IOException {
+        ByteBuffer _buf = buf.duplicate();
+        int offset = (int)dataOffset(version);
+        long len = (version == 3)?(buf.getLong(8) - 32):(buf.getInt(8) - 20);
+        if ((offset + len) < _buf.limit()) _buf.limit((int)(offset + len));
+        _buf.position(offset);
+        return get(new ByteBufferInputStream(_buf), buf, version, source);
+    }
+
+    static File get(InputStream compressed, ByteBuffer header, int version,
+        File source) throws IOException {
+        long ulen = (version == 3)?header.getLong(8 + 20):
+            (header.getInt(8 + 12) & 0xffffffffL);
+        File dir = CDFFactory.spillDirectory;
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create spill directory " + dir);
+        }
+        File spill = null;
+        String prefix = null;
+        if (source != null) {
+            File file = source.getCanonicalFile();
+            prefix = URLCache.key(file.toURI().toURL()) + "-";
+            spill = new File(dir, prefix + file.length() + "-" +
+                file.lastModified() + ".cdf");
+            if (spill.length() == (ulen + 8)) {
+                spill.setLastModified(System.currentTimeMillis());
+                return spill;
+            }
+        }
+        File tmp = File.createTempFile("cdfj", ".part", dir);
+        try {
+            OutputStream os = new FileOutputStream(tmp);
+            long n = 0;
+            try {
+                DataOutputStream dos = new DataOutputStream(os);
+                if (version == 3) {
+                    dos.writeLong(CDFFactory.CDF3_MAGIC);
+                } else {
+                    dos.writeInt(0xcdf26002);
+                    dos.writeInt(0x0000ffff);
+                }
+                GZIPInputStream gz = new GZIPInputStream(compressed,
+                    BLOCK_SIZE);
+                byte [] ba = new byte[BLOCK_SIZE];
+                int got;
+                while ((n < ulen) && ((got = gz.read(ba)) != -1)) {
+                    os.write(ba, 0, got);
+                    n += got;
+                }
+            } finally {
+                os.close();
+            }
+            if (n != ulen) {
+                throw new IOException("Uncompressed " + n +
+                    " bytes. Expected " + ulen);
+            }
+            if (spill == null) {
+                spill = tmp;
+                tmp = null;
+                spill.deleteOnExit();
+            } else {
+                Files.move(tmp.toPath(), spill.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            if (tmp != null) tmp.delete();
+        }
+        if (prefix != null) evict(dir, prefix, spill);
+        return spill;
+    }
+
+    /**
+     * removes the spill files of earlier versions of the source whose
+     * spill files are named with prefix, then removes least recently
+     * used spill files, other than keep, until the spill files in dir
+     * total at most the spill capacity.
+     */
+    static synchronized void evict(File dir, String prefix, File keep) {
+        File [] files = dir.listFiles(new FileFilter() {
+            public boolean accept(File f) {
+                return f.getName().endsWith(".cdf");
+            }
+        });
+        if (files == null) return;
+        long total = 0;
+        Vector<File> others = new Vector<File>();
+        for (int i = 0; i < files.length; i++) {
+            File f = files[i];
+            if (f.equals(keep)) {
+                total += f.length();
+                continue;
+            }
+            if (f.getName().startsWith(prefix) && f.delete()) continue;
+            total += f.length();
+            others.add(f);
+        }
+        long capacity = CDFFactory.spillCapacity;
+        if (total <= capacity) return;
+        final long [] used = new long[others.size()];
+        Integer [] order = new Integer[others.size()];
+        for (int i = 0; i < others.size(); i++) {
+            used[i] = others.get(i).lastModified();
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return Long.compare(used[a], used[b]);
+            }
+        });
+        for (int i = 0; (i < order.length) && (total > capacity); i++) {
+            File f = others.get(order[i]);
+            long length = f.length();
+            if (f.delete()) total -= length;
+        }
+    }
+
+    static long dataOffset(int version) {
+        return (version == 3)?(8 + 32):(8 + 20);
+    }
+
+    static class ByteBufferInputStream extends InputStream {
+        final ByteBuffer buf;
+        ByteBufferInputStream(ByteBuffer buf) {
+            this.buf = buf;
+        }
+        public int read() {
+            if (!buf.hasRemaining()) return -1;
+            return buf.get() & 0xff;
+        }
+        public int read(byte [] ba, int off, int len) {
+            if (!buf.hasRemaining()) return -1;
+            if (len > buf.remaining()) len = buf.remaining();
+            buf.get(ba, off, len);
+            return len;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package gov.nasa.gsfc.spdf.cdfj;
+import java.io.*;
+import java.net.*;
+import java.nio.file.*;
+import java.security.*;
+import java.util.*;
+/**
+ * URLCache keeps local copies of remote CDFs in a directory, so that
+ * repeated opens of the same URL, within or across processes, do not
+ * download the file again.
+ * An entry younger than the maximum age is used without contacting the
+ * server. An older entry is revalidated with a conditional request using
+ * the ETag and Last-Modified values of the last response. If the server
+ * cannot be reached, or fails with a server error, the cached copy is
+ * used. An entry the server reports as not found or gone is removed.
+ * New content is downloaded to a temporary file and moved into place
+ * atomically. When the total size of the cached files exceeds the
+ * maximum size, least recently used entries are removed.
+ * The time an entry was last used is kept with its ETag and Last-Modified
+ * values, and the modification time of the cached file is left alone,
+ * so that the file keeps its identity for readers keyed by it.
+ */
+public class URLCache {
+    final File dir;
+    long maxSize;
+    long maxAge;
+
+    /**
+     * creates a cache in the given directory holding at most maxSize
+     * bytes.
+     */
+    public URLCache(File dir, long maxSize) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create cache directory " + dir);
+        }
+        this.dir = dir;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * sets the age, in milliseconds, below which an entry is used
+     * without revalidation. Default is 0.
+     */
+    public void setMaxAge(long maxAge) {
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * returns a local file with the current content of the given URL.
+     */
+    public File getFile(URL url) throws IOException {
+        String key = key(url);
+        File data = new File(dir, key + ".cdf");
+        File meta = new File(dir, key + ".properties");
+        Properties props = null;
+        if (data.exists() && meta.exists()) {
+            props = new Properties();
+            FileInputStream fis = new FileInputStream(meta);
+            try {
+                props.load(fis);
+            } finally {
+                fis.close();
+            }
+            long fetched = Long.parseLong(props.getProperty("fetched", "0"));
+            if ((System.currentTimeMillis() - fetched) < maxAge) {
+                touch(props, meta, key);
+                return data;
+            }
+        }
+        HttpURLConnection con = null;
+        URLConnection ucon = new CDFUrl(url).openConnection();
+        if (ucon instanceof HttpURLConnection) {
+            con = (HttpURLConnection)ucon;
+            con.setRequestProperty("Accept-Encoding", "identity");
+            if (props != null) {
+                String etag = props.getProperty("etag");
+                if (etag != null) con.setRequestProperty("If-None-Match", etag);
+                String modified = props.getProperty("lastModified");
+                if (modified != null) {
+                    con.setRequestProperty("If-Modified-Since", modified);
+                }
+            }
+        }
+        int code = HttpURLConnection.HTTP_OK;
+        try {
+            if (con != null) code = con.getResponseCode();
+            if (code == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                props.setProperty("fetched", "" + System.currentTimeMillis());
+                touch(props, meta, key);
+                return data;
+            }
+            if (code >= HttpURLConnection.HTTP_INTERNAL_ERROR) {
+                throw new IOException("Request for " + url + " returned " +
+                    code);
+            }
+            if (code == HttpURLConnection.HTTP_OK) {
+                File tmp = File.createTempFile(key, ".part", dir);
+                try {
+                    InputStream is = ucon.getInputStream();
+                    OutputStream os = new FileOutputStream(tmp);
+                    try {
+                        byte [] ba = new byte[64*1024];
+                        int n;
+                        while ((n = is.read(ba)) != -1) os.write(ba, 0, n);
+                    } finally {
+                        os.close();
+                        is.close();
+                    }
+                    long length = ucon.getContentLengthLong();
+                    if ((length >= 0) && (tmp.length() != length)) {
+                        throw new IOException("Mismatched length " +
+                            tmp.length() + " expected: " + length);
+                    }
+                    Files.move(tmp.toPath(), data.toPath(),
+                        StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+                } finally {
+                    tmp.delete();
+                }
+            }
+        } catch (IOException ex) {
+            if (props == null) throw ex;
+            touch(props, meta, key);
+            return data;
+        }
+        if (code != HttpURLConnection.HTTP_OK) {
+            if ((code == HttpURLConnection.HTTP_NOT_FOUND) ||
+                (code == HttpURLConnection.HTTP_GONE)) {
+                meta.delete();
+                data.delete();
+            }
+            throw new IOException("Request for " + url + " returned " + code);
+        }
+        props = new Properties();
+        props.setProperty("url", url.toString());
+        props.setProperty("fetched", "" + System.currentTimeMillis());
+        props.setProperty("used", "" + System.currentTimeMillis());
+        String etag = ucon.getHeaderField("ETag");
+        if (etag != null) props.setProperty("etag", etag);
+        String modified = ucon.getHeaderField("Last-Modified");
+        if (modified != null) props.setProperty("lastModified", modified);
+        publish(props, meta, key);
+        evict(data);
+        return data;
+    }
+
+    /**
+     * records that the entry whose properties are props has been used.
+     */
+    void touch(Properties props, File meta, String key) throws IOException {
+        props.setProperty("used", "" + System.currentTimeMillis());
+        publish(props, meta, key);
+    }
+
+    void publish(Properties props, File meta, String key) throws IOException {
+        File tmp = File.createTempFile(key, ".part", dir);
+        try {
+            FileOutputStream fos = new FileOutputStream(tmp);
+            try {
+                props.store(fos, null);
+            } finally {
+                fos.close();
+            }
+            Files.move(tmp.toPath(), meta.toPath(),
+                StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    /**
+     * removes least recently used entries, other than keep, until the
+     * total size is within maxSize.
+     */
+    synchronized void evict(File keep) {
+        File [] files = dir.listFiles(new FileFilter() {
+            public boolean accept(File f) {
+                return f.getName().endsWith(".cdf");
+            }
+        });
+        if (files == null) return;
+        long total = 0;
+        for (int i = 0; i < files.length; i++) total += files[i].length();
+        if (total <= maxSize) return;
+        final long [] used = new long[files.length];
+        Integer [] order = new Integer[files.length];
+        for (int i = 0; i < files.length; i++) {
+            used[i] = lastUsed(files[i]);
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return Long.compare(used[a], used[b]);
+            }
+        });
+        for (int i = 0; (i < order.length) && (total > maxSize); i++) {
+            File f = files[order[i]];
+            if (f.equals(keep)) continue;
+            long length = f.length();
+            String name = f.getName();
+            File meta = new File(dir, name.substring(0, name.length() - 4) +
+                ".properties");
+            meta.delete();
+            if (f.delete()) total -= length;
+        }
+    }
+
+    /**
+     * returns the time the entry whose data is in file f was last used,
+     * or, if that was not recorded, the time f was written.
+     */
+    long lastUsed(File f) {
+        String name = f.getName();
+        File meta = new File(dir, name.substring(0, name.length() - 4) +
+            ".properties");
+        Properties props = new Properties();
+        try {
+            FileInputStream fis = new FileInputStream(meta);
+            try {
+                props.load(fis);
+            } finally {
+                fis.close();
+            }
+            String used = props.getProperty("used");
+            if (used != null) return Long.parseLong(used);
+        } catch (IOException ex) {
+        } catch (NumberFormatException ex) {
+        }
+        return f.lastModified();
+    }
+
+    static String key(URL url) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            byte [] digest = md.digest(url.toString().getBytes("UTF-8"));
+            StringBuffer sb = new StringBuffer();
+            for (int i = 0; i < digest.length; i++) {
+                sb.append(String.format("%02x", digest[i]));
+            }
+            return sb.toString();
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+}
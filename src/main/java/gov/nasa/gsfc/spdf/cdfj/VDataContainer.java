@@ -1,10 +1,11 @@
 package gov.nasa.gsfc.spdf.cdfj;
 //import gov.nasa.gsfc.spdf.common.*;
+import java.lang.reflect.*;
 import java.nio.*;
 /**
  * Data Container for a variable
  */
-public interface VDataContainer extends Runnable {
+public interface VDataContainer extends Runnable, AutoCloseable {
     /**
      * Returns ByteBuffer for this container.
      */
@@ -20,6 +21,42 @@ public interface VDataContainer extends Runnable {
      */
     public Object as1DArray();
     public Object asOneDArray(boolean cmtarget);
+
+    /**
+     * Decodes the one dimensional array representation into array,
+     * starting at offset. Returns the number of values decoded.
+     * By default, the values returned by asOneDArray(cmtarget) are
+     * copied into array.
+     */
+    public default int asOneDArray(boolean cmtarget, Object array,
+        int offset) throws Throwable {
+        Object values = asOneDArray(cmtarget);
+        if (values == null) throw new Throwable("No values available.");
+        if ((array == null) || (array.getClass() != values.getClass())) {
+            throw new Throwable("Array of " +
+                values.getClass().getComponentType() + " expected.");
+        }
+        int count = Array.getLength(values);
+        BaseVarContainer.checkSpace(array, offset, count);
+        System.arraycopy(values, 0, array, offset, count);
+        return count;
+    }
+
+    /**
+     * Returns the buffer holding the values to the buffer pool. Buffers
+     * returned by getBuffer must not be used after release.
+     * By default, does nothing.
+     */
+    public default void release() {
+    }
+
+    /**
+     * Same as release, so that a container can be used in a try with
+     * resources statement.
+     */
+    public default void close() {
+        release();
+    }
     public AArray asArray() throws Throwable ;
     public void setDirect(boolean direct);
 
@@ -41,6 +41,21 @@ public interface Variable extends VariableMetaData {
      */
     public float[] asFloatArray(int[] pt) throws Throwable;
 
+    /**
+     * Decodes this variable's values for the specified range of records
+     * into array, starting at offset, and returns the number of values
+     * decoded.
+     * If variable type cannot be cast to float, or array is too small,
+     * a Throwable is thrown.
+     */
+    public default int asFloatArray(int[] pt, float[] array, int offset)
+        throws Throwable {
+        float[] values = asFloatArray(pt);
+        BaseVarContainer.checkSpace(array, offset, values.length);
+        System.arraycopy(values, 0, array, offset, values.length);
+        return values.length;
+    }
+
     /**
      * Returns this variable's values as double[].
      * If variable type cannot be cast to double, a Throwable is thrown.
@@ -63,6 +78,21 @@ public interface Variable extends VariableMetaData {
      */
     public double[] asDoubleArray(int[] pt) throws Throwable;
 
+    /**
+     * Decodes this variable's values for the specified range of records
+     * into array, starting at offset, and returns the number of values
+     * decoded.
+     * If variable type cannot be cast to double, or array is too small,
+     * a Throwable is thrown.
+     */
+    public default int asDoubleArray(int[] pt, double[] array, int offset)
+        throws Throwable {
+        double[] values = asDoubleArray(pt);
+        BaseVarContainer.checkSpace(array, offset, values.length);
+        System.arraycopy(values, 0, array, offset, values.length);
+        return values.length;
+    }
+
     /**
      * Returns this variable's values as int[] for variables of type
      * int, short or unsigned short, byte or unsigned byte.
@@ -121,6 +151,21 @@ public interface Variable extends VariableMetaData {
      */
     public long[] asLongArray(int[] pt) throws Throwable;
 
+    /**
+     * Decodes this variable's values for the specified range of records
+     * into array, starting at offset, and returns the number of values
+     * decoded, for variables of type long.
+     * throws Throwable for variables of other types, or if array is too
+     * small.
+     */
+    public default int asLongArray(int[] pt, long[] array, int offset)
+        throws Throwable {
+        long[] values = asLongArray(pt);
+        BaseVarContainer.checkSpace(array, offset, values.length);
+        System.arraycopy(values, 0, array, offset, values.length);
+        return values.length;
+    }
+
     /**
      * Return whether the missing record should be assigned the last 
      * seen value. If none has been seen, pad value is assigned.
@@ -171,5 +171,11 @@ public interface VariableMetaData {
      */
     public int[] getEffectiveDimensions();
     public int getBlockingFactor();
+
+    /**
+     * Returns compression type of this variable's values, as recorded in
+     * its CPR, or 0 if values are not compressed.
+     */
+    public int getCompressionType();
     public boolean isTypeR();
 }